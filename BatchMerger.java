@@ -0,0 +1,247 @@
+package org.eclipse.epsilon.egl;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.eclipse.epsilon.egl.MergingAndConflicts.StatusCode;
+
+public class BatchMerger {
+
+	/**
+	 * One file to merge: either the existing and new contents, or a target
+	 * whose existing contents are read when its merge runs.
+	 */
+
+	public static class Input {
+
+		private final String name;
+		private final Path target;
+		private final String existingContents;
+		private final String newContents;
+
+		private Input (String name, Path target, String existingContents, String newContents) {
+			this.name = name;
+			this.target = target;
+			this.existingContents = existingContents;
+			this.newContents = newContents;
+		}
+
+		public static Input of (String name, String existingContents, String newContents) {
+			return new Input(name, null, existingContents, newContents);
+		}
+
+		public static Input of (Path target, String newContents) {
+			return new Input(target.toString(), target, null, newContents);
+		}
+
+		public String getName () {
+			return name;
+		}
+
+		public Path getTarget () {
+			return target;
+		}
+
+		String readExistingContents () throws IOException {
+			return target == null ? existingContents : new String(Files.readAllBytes(target), Charset.defaultCharset());
+		}
+
+		public String getNewContents () {
+			return newContents;
+		}
+	}
+
+	/**
+	 * The outcome of one input: a merge result, or the error that stopped it.
+	 */
+
+	public static class FileResult {
+
+		private final Input input;
+		private final MergingAndConflicts result;
+		private final Exception error;
+		private final long nanos;
+
+		FileResult (Input input, MergingAndConflicts result, Exception error, long nanos) {
+			this.input = input;
+			this.result = result;
+			this.error = error;
+			this.nanos = nanos;
+		}
+
+		public Input getInput () {
+			return input;
+		}
+
+		/**
+		 * @return the merge result, null if the merge failed
+		 */
+
+		public MergingAndConflicts getResult () {
+			return result;
+		}
+
+		public Exception getError () {
+			return error;
+		}
+
+		public boolean isFailed () {
+			return error != null;
+		}
+
+		public long getNanos () {
+			return nanos;
+		}
+	}
+
+	/**
+	 * The results of a batch, in the order of its inputs, and statistics over them.
+	 */
+
+	public static class BatchResult {
+
+		private final List<FileResult> results;
+		private final Map<StatusCode, Integer> statusCounts = new EnumMap<>(StatusCode.class);
+		private final int failedCount;
+		private final long totalNanos;
+		private final long maxNanos;
+		private final long elapsedNanos;
+
+		BatchResult (List<FileResult> results, long elapsedNanos) {
+			this.results = Collections.unmodifiableList(results);
+			this.elapsedNanos = elapsedNanos;
+			int failed = 0;
+			long total = 0;
+			long max = 0;
+			for (FileResult r : results) {
+				total += r.getNanos();
+				max = Math.max(max, r.getNanos());
+				if (r.isFailed())
+					++failed;
+				else
+					statusCounts.merge(r.getResult().getStatus(), 1, Integer::sum);
+			}
+			this.failedCount = failed;
+			this.totalNanos = total;
+			this.maxNanos = max;
+		}
+
+		public List<FileResult> getResults () {
+			return results;
+		}
+
+		public int getFileCount () {
+			return results.size();
+		}
+
+		public int getStatusCount (StatusCode status) {
+			return statusCounts.getOrDefault(status, 0);
+		}
+
+		public int getFailedCount () {
+			return failedCount;
+		}
+
+		/**
+		 * @return the merge time summed over all files, in nanoseconds
+		 */
+
+		public long getTotalNanos () {
+			return totalNanos;
+		}
+
+		public long getMaxNanos () {
+			return maxNanos;
+		}
+
+		/**
+		 * @return the wall-clock time of the whole batch, in nanoseconds
+		 */
+
+		public long getElapsedNanos () {
+			return elapsedNanos;
+		}
+	}
+
+	/**
+	 * Fields that used in this class
+	 */
+
+	private final Executor executor;
+	private final MergeEngine engine;
+
+	/**
+	 * Merges on the common fork-join pool.
+	 */
+
+	public BatchMerger () {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param executor runs the merges, e.g. a ForkJoinPool sized to the cores,
+	 * or a virtual-thread-per-task executor when targets are read from disk
+	 */
+
+	public BatchMerger (Executor executor) {
+		this(executor, MergeEngine.getDefault());
+	}
+
+	/**
+	 * @param executor, engine the 3-way merge used for every file of the batch
+	 */
+
+	public BatchMerger (Executor executor, MergeEngine engine) {
+		this.executor = executor;
+		this.engine = engine;
+		MergeMetrics.registerIfRequested();
+	}
+
+	/**
+	 * This method merges every input concurrently, each one as MergingAndConflicts.DoMergingAndConflicts
+	 * would. Each result is stored at the position of its input, so the
+	 * result order does not depend on how the merges were scheduled.
+	 * A failed input is reported in its result and does not stop the others.
+	 *
+	 * @param inputs
+	 * @return the per-file results, in input order, and their statistics
+	 */
+
+	public BatchResult mergeAll (List<Input> inputs) {
+		long start = System.nanoTime();
+		FileResult[] results = new FileResult[inputs.size()];
+		List<CompletableFuture<Void>> merges = new ArrayList<>(inputs.size());
+		for (int i = 0; i < results.length; ++i) {
+			final int index = i;
+			final Input input = inputs.get(i);
+			merges.add(CompletableFuture.runAsync(() -> results[index] = mergeOne(input), executor));
+		}
+		// every merge catches its own errors, joining also publishes the results array
+		CompletableFuture.allOf(merges.toArray(new CompletableFuture<?>[0])).join();
+		return new BatchResult(Arrays.asList(results), System.nanoTime() - start);
+	}
+
+	private FileResult mergeOne (Input input) {
+		long start = System.nanoTime();
+		try {
+			String existingContents = input.readExistingContents();
+			MergeSession session = new MergeSession(existingContents, input.getNewContents(), engine);
+			session.setTarget(input.getName());
+			MergingAndConflicts result = session.merge();
+			return new FileResult(input, result, null, System.nanoTime() - start);
+		} catch (IOException | RuntimeException e) {
+			return new FileResult(input, null, e, System.nanoTime() - start);
+		}
+	}
+}
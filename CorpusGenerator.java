@@ -0,0 +1,276 @@
+package org.eclipse.epsilon.egl;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.epsilon.egl.output.OutputBuffer;
+
+/*
+ * Makes a corpus of files that look generated, with valid hash trailers, for
+ * the performance tests and benchmarks. Everything comes from the seed: the
+ * same seed and settings give the same files and the same edits every run,
+ * on every machine, with nothing read from disk.
+ *
+ * Usage: CorpusGenerator <folder> [files] [lines] [seed]
+ */
+
+public class CorpusGenerator {
+
+	/**
+	 * One merge of the corpus: the generated file edited by a TestStrategy
+	 * scenario, and the next template output
+	 */
+
+	public static class Case {
+
+		private final String name;
+		private final TestStrategy strategy;
+		private final String existingContents;
+		private final String newContents;
+
+		Case (String name, TestStrategy strategy, String existingContents, String newContents) {
+			this.name = name;
+			this.strategy = strategy;
+			this.existingContents = existingContents;
+			this.newContents = newContents;
+		}
+
+		public String getName () {
+			return name;
+		}
+
+		public TestStrategy getStrategy () {
+			return strategy;
+		}
+
+		public String getExistingContents () {
+			return existingContents;
+		}
+
+		public String getNewContents () {
+			return newContents;
+		}
+	}
+
+	/**
+	 * The largest file that can be made, in lines
+	 */
+
+	public static final int MAX_LINES = 1_000_000;
+
+	/**
+	 * The markers of the sync regions in the generated files
+	 */
+
+	public static final String SYNC_START = "//sync ";
+	public static final String SYNC_END = "//endSync";
+
+	/**
+	 * Fields that used in this class, the settings of the corpus
+	 */
+
+	private final long seed;
+	private int files = 100;
+	private int lines = 1000;
+	private double protectedRegionDensity = 0.02;
+	private double syncRegionDensity = 0;
+	private double duplicateShare = 0.1;
+	private HashLineVersion version = HashLineVersion.V1;
+
+	public CorpusGenerator (long seed) {
+		this.seed = seed;
+	}
+
+	public CorpusGenerator files (int files) {
+		if (files < 0)
+			throw new IllegalArgumentException("Files must not be negative: " + files);
+		this.files = files;
+		return this;
+	}
+
+	public CorpusGenerator lines (int lines) {
+		if (lines < 1 || lines > MAX_LINES)
+			throw new IllegalArgumentException("Lines must be from 1 to " + MAX_LINES + ": " + lines);
+		this.lines = lines;
+		return this;
+	}
+
+	/**
+	 * @param density the chance that a generated method is followed by a protected region
+	 */
+
+	public CorpusGenerator protectedRegionDensity (double density) {
+		this.protectedRegionDensity = density;
+		return this;
+	}
+
+	/**
+	 * @param density the chance that a generated method is followed by a sync region
+	 */
+
+	public CorpusGenerator syncRegionDensity (double density) {
+		this.syncRegionDensity = density;
+		return this;
+	}
+
+	/**
+	 * @param share the share of statement lines that repeat an earlier statement,
+	 * on top of the braces and blank lines every generated file repeats
+	 */
+
+	public CorpusGenerator duplicateShare (double share) {
+		this.duplicateShare = share;
+		return this;
+	}
+
+	/**
+	 * @param version the hash line the trailers are written with, v1 as the
+	 * templates write them by default, or v2 as the merge rewrites them. The
+	 * v1 hashes keep the top bits of String.hashCode, so the generated lines
+	 * that only differ in their last characters ("return field7;" and 
+	 * "return field9;") collide; the merge tells them apart by the template.
+	 */
+
+	public CorpusGenerator version (HashLineVersion version) {
+		this.version = version;
+		return this;
+	}
+
+	public int getFiles () {
+		return files;
+	}
+
+	public int getLines () {
+		return lines;
+	}
+
+	public String name (int file) {
+		return "Generated" + file + ".java";
+	}
+
+	/**
+	 * @return the file with its hash trailer
+	 */
+
+	public String generate (int file) {
+		String body = body(file);
+		String document = OutputBuffer.documentWithAppendedHashLine(body);
+		if (version == HashLineVersion.V2) {
+			HashTrailer trailer = HashTrailer.read(document);
+			return HashTrailer.append(body, body, trailer);
+		}
+		return document;
+	}
+
+	/**
+	 * This method applies a scenario to a file. The edits are seeded by the
+	 * file and the scenario, so a file gets the same edits every run.
+	 *
+	 * @return the file edited by the user, and the next template output
+	 */
+
+	public Case scenario (int file, TestStrategy strategy) {
+		List<String> existingLines = new ArrayList<>(Arrays.asList(generate(file).split("\n", -1)));
+		List<String> templateLines = new ArrayList<>(existingLines);
+		strategy.apply(existingLines, templateLines, random(file, 1 + strategy.ordinal()));
+		return new Case(name(file), strategy, String.join("\n", existingLines), String.join("\n", templateLines));
+	}
+
+	/**
+	 * This method writes every file of the corpus to the folder.
+	 *
+	 * @return the written files
+	 */
+
+	public List<Path> write (Path folder) throws IOException {
+		Files.createDirectories(folder);
+		List<Path> written = new ArrayList<>(files);
+		for (int file = 0; file < files; ++file) {
+			Path path = folder.resolve(name(file));
+			Files.write(path, generate(file).getBytes(Charset.defaultCharset()));
+			written.add(path);
+		}
+		return written;
+	}
+
+	/**
+	 * This method makes the body of a file: classes of fields and methods, with
+	 * the braces and blank lines repeated as in real output. After a method, a
+	 * protected or sync region may follow, unless the end of the file would
+	 * cut it.
+	 */
+
+	String body (int file) {
+		Random random = random(file, 0);
+		List<String> out = new ArrayList<>(lines + 16);
+		List<String> statements = new ArrayList<>();
+		int names = 0, regions = 0;
+		while (out.size() < lines) {
+			out.add("public class Type" + file + "_" + out.size() + " {");
+			out.add("");
+			for (int m = 0; m < 8 && out.size() < lines; ++m) {
+				String name = "field" + names++;
+				out.add(statement("\tprivate String " + name + ";", statements, random));
+				out.add("\tpublic String get" + name + "() {");
+				out.add(statement("\t\treturn " + name + ";", statements, random));
+				out.add("\t}");
+				out.add("");
+				if (random.nextDouble() < protectedRegionDensity && out.size() + 3 <= lines) {
+					String id = "region" + regions++;
+					out.add("\t// protected region " + id + " on begin");
+					out.add("\t// code of " + id);
+					out.add("\t// protected region " + id + " end");
+				}
+				if (random.nextDouble() < syncRegionDensity && out.size() + 3 <= lines) {
+					String id = "sync" + regions++;
+					out.add("\t" + SYNC_START + id + ", " + name);
+					out.add("\t\t" + name + " = \"" + id + "\";");
+					out.add("\t" + SYNC_END);
+				}
+			}
+			out.add("}");
+		}
+		return String.join("\n", out.subList(0, lines));
+	}
+
+	/**
+	 * @return the line, or with the chance duplicateShare an earlier statement
+	 */
+
+	private String statement (String line, List<String> statements, Random random) {
+		if (!statements.isEmpty() && random.nextDouble() < duplicateShare)
+			return statements.get(random.nextInt(statements.size()));
+		statements.add(line);
+		return line;
+	}
+
+	private Random random (int file, int stream) {
+		return new Random(seed + 0x9e3779b97f4a7c15L * ((long) file * 64 + stream));
+	}
+
+	static boolean isSyncStart (String line) {
+		return line.trim().startsWith(SYNC_START);
+	}
+
+	static boolean isSyncEnd (String line) {
+		return line.trim().startsWith(SYNC_END);
+	}
+
+	public static void main (String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: CorpusGenerator <folder> [files] [lines] [seed]");
+			return;
+		}
+		CorpusGenerator corpus = new CorpusGenerator(args.length > 3 ? Long.parseLong(args[3]) : 1)
+			.files(args.length > 1 ? Integer.parseInt(args[1]) : 100)
+			.lines(args.length > 2 ? Integer.parseInt(args[2]) : 1000);
+		System.out.println("Wrote " + corpus.write(Paths.get(args[0])).size() + " files to " + args[0]);
+	}
+}
@@ -0,0 +1,93 @@
+package org.eclipse.epsilon.egl;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.merge.MergeChunk.ConflictState;
+import org.eclipse.jgit.merge.MergeResult;
+
+import jlibdiff.Diff3;
+import jlibdiff.Hunk3;
+
+public class Diff3MergeEngine implements MergeEngine {
+
+	/**
+	 * The files are given to diff3 in its order: mine, older, yours
+	 */
+
+	private static final int MINE = 0;
+	private static final int OLDER = 1;
+	private static final int YOURS = 2;
+
+	@Override
+	public String getName () {
+		return "diff3";
+	}
+
+	/**
+	 * This method runs jlibdiff's diff3 and turns its hunks into a JGit merge
+	 * result, so conflicts are reported and formatted as for the other engines.
+	 * A hunk where only one side differs from the base takes that side, a hunk
+	 * where both sides made the same change takes it once, any other hunk is
+	 * a conflict. The side taken is added even when it is empty, as JGit adds 
+	 * it, since the last chunk decides if the merged text ends with a newline.
+	 */
+
+	@Override
+	public MergeResult<RawText> merge (RawText commonBase, RawText ours, RawText theirs) {
+		Diff3 diff3 = new Diff3();
+		try {
+			diff3.diffBuffer(reader(ours), reader(commonBase), reader(theirs));
+		} catch (Exception e) {
+			throw new IllegalStateException("diff3 could not compare the contents", e);
+		}
+		MergeResult<RawText> result = new MergeResult<>(Arrays.asList(commonBase, ours, theirs));
+		int next = 0; // the first base line not added yet
+		for (Object h : diff3.getHunk3()) {
+			Hunk3 hunk = (Hunk3) h;
+			// hunk lines are 1-based and inclusive, an empty range ends before it starts
+			int baseFrom = hunk.lowLine(OLDER) - 1, baseTo = Math.max(hunk.highLine(OLDER), baseFrom);
+			int oursFrom = hunk.lowLine(MINE) - 1, oursTo = Math.max(hunk.highLine(MINE), oursFrom);
+			int theirsFrom = hunk.lowLine(YOURS) - 1, theirsTo = Math.max(hunk.highLine(YOURS), theirsFrom);
+			if (baseFrom < next)
+				throw new IllegalStateException("diff3 hunks are out of order");
+			add(result, StructuredMergeResult.BASE, next, baseFrom, ConflictState.NO_CONFLICT);
+			next = baseTo;
+			if (same(ours, oursFrom, oursTo, commonBase, baseFrom, baseTo)) {
+				result.add(StructuredMergeResult.THEIRS, theirsFrom, theirsTo, ConflictState.NO_CONFLICT);
+			} else if (same(theirs, theirsFrom, theirsTo, commonBase, baseFrom, baseTo)
+					|| same(ours, oursFrom, oursTo, theirs, theirsFrom, theirsTo)) {
+				result.add(StructuredMergeResult.OURS, oursFrom, oursTo, ConflictState.NO_CONFLICT);
+			} else {
+				result.add(StructuredMergeResult.OURS, oursFrom, oursTo, ConflictState.FIRST_CONFLICTING_RANGE);
+				result.add(StructuredMergeResult.THEIRS, theirsFrom, theirsTo, ConflictState.NEXT_CONFLICTING_RANGE);
+			}
+		}
+		add(result, StructuredMergeResult.BASE, next, commonBase.size(), ConflictState.NO_CONFLICT);
+		return result;
+	}
+
+	private static void add (MergeResult<RawText> result, int sequence, int from, int to, ConflictState state) {
+		if (from < to)
+			result.add(sequence, from, to, state);
+	}
+
+	private static boolean same (RawText a, int aFrom, int aTo, RawText b, int bFrom, int bTo) {
+		if (aTo - aFrom != bTo - bFrom)
+			return false;
+		for (int i = 0; i < aTo - aFrom; ++i) {
+			if (!RawTextComparator.DEFAULT.equals(a, aFrom + i, b, bFrom + i))
+				return false;
+		}
+		return true;
+	}
+
+	private static BufferedReader reader (RawText text) {
+		return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(text.getRawContent()), StandardCharsets.UTF_8));
+	}
+}
@@ -19,8 +19,8 @@ import java.net.URISyntaxException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -34,6 +34,7 @@ import org.eclipse.epsilon.egl.formatter.NullFormatter;
 import org.eclipse.epsilon.egl.incremental.IncrementalitySettings;
 import org.eclipse.epsilon.egl.merge.output.LocatedRegion;
 import org.eclipse.epsilon.egl.merge.partition.CommentBlockPartitioner;
+import org.eclipse.epsilon.egl.merge.partition.CompositePartitioner;
 import org.eclipse.epsilon.egl.output.OutputBuffer;
 import org.eclipse.epsilon.egl.patch.Line;
 import org.eclipse.epsilon.egl.patch.Patch;
@@ -52,9 +53,6 @@ import org.eclipse.epsilon.egl.status.ProtectedRegionWarning;
 import org.eclipse.epsilon.egl.traceability.OutputFile;
 import org.eclipse.epsilon.egl.util.FileUtil;
 
-import jlibdiff.Diff3;
-import jlibdiff.Hunk3;
-
 // When I change the name of the class MergeTester to MergeTester3 I commented the below line 
 //import org.eclipse.epsilon.egl.MergeTester;
 
@@ -71,6 +69,10 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 	private String newContents;
 	private String positiveMessage;
 	private OutputMode outputMode;
+	private StatusCode mergeStatus;
+	private boolean existingWithoutHashTrailer;
+	private MergingAndConflicts mergeResult;
+	private GenerationEvent generationEvent;
 
 	public static enum OutputMode {
 		WRITE, MERGE, APPEND, PATCH;
@@ -85,6 +87,7 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 	public EglFileGeneratingTemplate(EglTemplateSpecification spec, IEglContext context, URI outputRoot,
 			String outputRootPath) throws Exception {
 		super(spec, context, outputRoot, outputRootPath);
+		MergeMetrics.registerIfRequested();
 	}
 
 	/**
@@ -98,6 +101,7 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 	public EglFileGeneratingTemplate(EglTemplateSpecification spec, IEglContext context, URI outputRoot)
 			throws Exception {
 		super(spec, context, outputRoot);
+		MergeMetrics.registerIfRequested();
 	}
 
 	public File append(String path) throws EglRuntimeException {
@@ -118,11 +122,17 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 
 			this.target = target;
 			this.targetName = name(path);
-			this.existingContents = FileUtil.readIfExists(target);
 			this.outputMode = outputMode;
 
+			if (isUnchangedSinceLastGeneration()) {
+				contentUnchanged();
+				return target;
+			}
+			this.existingContents = readExisting(target);
+
 			prepareNewContents();
 			writeNewContentsIfDifferentFromExistingContents();
+			recordGeneration();
 
 			return target;
 		} catch (URISyntaxException e) {
@@ -138,11 +148,17 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 		try {
 			this.target = target;
 			this.targetName = targetName;
-			this.existingContents = FileUtil.readIfExists(target);
 			this.outputMode = (merge && target.exists()) ? OutputMode.MERGE : OutputMode.WRITE;
 
+			if (isUnchangedSinceLastGeneration()) {
+				contentUnchanged();
+				return;
+			}
+			this.existingContents = readExisting(target);
+
 			prepareNewContents();
 			writeNewContentsIfDifferentFromExistingContents();
+			recordGeneration();
 
 		} catch (URISyntaxException e) {
 			throw new EglRuntimeException("Could not resolve path: " + target, e, module);
@@ -151,6 +167,50 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 		}
 	}
 
+	/**
+	 * This method uses the generation index, if one is configured, to find out 
+	 * before any merge that neither the target nor the template output changed 
+	 * since the target was last generated.
+	 */
+	
+	protected boolean isUnchangedSinceLastGeneration() throws EglRuntimeException {
+		GenerationIndex index = GenerationIndex.getDefault();
+		if (index == null || isOverwriteUnchangedFiles() || getTarget() == null) {
+			return false;
+		}
+		if (getOutputMode() != OutputMode.WRITE && getOutputMode() != OutputMode.MERGE) {
+			return false;
+		}
+		return index.isUnchanged(getTarget(), getContents());
+	}
+	
+	/**
+	 * This method records the target in the generation index, if one is configured.
+	 * Targets left with a conflict or with modified generated lines are dropped, 
+	 * so they are checked again next time. The target holds the new contents, 
+	 * so they are hashed rather than read back. The journal of the index is 
+	 * closed again, so no file is left open between targets.
+	 */
+	
+	protected void recordGeneration() throws EglRuntimeException, IOException {
+		GenerationIndex index = GenerationIndex.getDefault();
+		if (index == null || getTarget() == null) {
+			return;
+		}
+		if (getOutputMode() != OutputMode.WRITE && getOutputMode() != OutputMode.MERGE) {
+			return;
+		}
+		try {
+			if (mergeStatus == StatusCode.ConflictsFound || mergeStatus == StatusCode.OriginalWasModified || !getTarget().isFile()) {
+				index.forget(getTarget());
+			} else {
+				index.record(getTarget(), getNewContents(), getContents());
+			}
+		} finally {
+			index.close();
+		}
+	}
+
 	protected void prepareNewContents() throws EglRuntimeException {
 		switch (outputMode) {
 		case APPEND: {
@@ -161,30 +221,15 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 		}
 		
 		/**
-		 * This MERGE case was modified to return where exactlly line/s have been added
-		 * It compares existing contents with new contents. 
+		 * This MERGE case was modified to return where exactlly line/s have been added.
+		 * The added lines are found by the merge, the message is made from them 
+		 * in getPositiveMessage when it is emitted.
 		 */
 		case MERGE: {
 			newContents = merge(getExistingContents());
 
 			// original code was .. positiveMessage = "Protected regions preserved in ";
-			positiveMessage = "";
-			String[] linesA = OutputBuffer.contentWithoutRegions(newContents).split("\n");
-			String[] linesB = OutputBuffer.contentWithoutRegions(getExistingContents()).split("\n");
-			for (int a = 0, b = 0, n = 0; a < linesA.length && b < linesB.length; ++a, ++b) {
-				if (!linesA[a].equals(linesB[b])) {
-					--a;
-					++n;
-				} else if (n > 0) {
-					positiveMessage += n + " line" + (n != 1 ? "s have" : " has") +
-						" been added and preserved after line "+ (b - n) + "\n";
-					n = 0;
-				}
-			}
-			if (positiveMessage == ""){
-				positiveMessage = "Protected regions preserved in ";
-			} else
-			positiveMessage += "  in ";
+			positiveMessage = null;
 			break;
 		}
 		case WRITE: {
@@ -220,12 +265,44 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 		}
 	}
 
+	/**
+	 * This method writes or merges the new contents, see doWriteNewContentsIfDifferentFromExistingContents.
+	 * While a Flight Recorder recording has it enabled, a GenerationEvent records the target,
+	 * the output mode, the merge status, the line counts and the time of the write.
+	 */
+	
+	protected void writeNewContentsIfDifferentFromExistingContents() throws URISyntaxException, IOException {
+		GenerationEvent event = new GenerationEvent();
+		if (!event.isEnabled()) {
+			doWriteNewContentsIfDifferentFromExistingContents();
+			return;
+		}
+		generationEvent = event;
+		event.begin();
+		try {
+			doWriteNewContentsIfDifferentFromExistingContents();
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.target = getTarget() == null ? getTargetName() : getTarget().getAbsolutePath();
+				event.outputMode = String.valueOf(getOutputMode());
+				event.status = mergeStatus == null ? null : mergeStatus.name();
+				event.lines = GenerationEvent.lines(newContents);
+				event.existingLines = GenerationEvent.lines(existingContents);
+				event.commit();
+			}
+			generationEvent = null;
+		}
+	}
+
 	/**
 	 * This method 
 	 * 
 	 */
 	
-	protected void writeNewContentsIfDifferentFromExistingContents() throws URISyntaxException, IOException {		
+	protected void doWriteNewContentsIfDifferentFromExistingContents() throws URISyntaxException, IOException {		
+		mergeStatus = null;
+		mergeResult = null;
 				
 		//// New changes
 		if (!OutputBuffer.UseHashLines)
@@ -240,6 +317,12 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 			return;
 		}				
 		///// Until here
+		
+		if (existingWithoutHashTrailer) {
+			mergeStatus = StatusCode.OriginalWasModified;
+			addMessage("At least one of generated lines has been changed or deleted: " + getTarget().getAbsolutePath());
+			return;
+		}
 				
 		if (isOverwriteUnchangedFiles() || !newContents.equals(existingContents)) {
 			if (existingContents != null && !existingContents.equals("")) {
@@ -247,7 +330,9 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 				String conflictFilePath = getTarget().getAbsolutePath() + ".conflict";
 				File conflictFile = new File(conflictFilePath);
 						
-				MergingAndConflicts result = MergingAndConflicts.DoMergingAndConflicts(existingContents, newContents);
+				MergingAndConflicts result = MergingAndConflicts.DoMergingAndConflicts(existingContents, newContents, getTargetName());
+				mergeStatus = result.getStatus();
+				mergeResult = result;
 				
 				// check if the conflict file delete
 				if (result.getStatus() == StatusCode.ConflictsResolved) {
@@ -284,8 +369,52 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 			addMessage(getPositiveMessage() + getTargetName());
 
 		} else {
-			addMessage("Content unchanged for " + getTargetName());			
+			contentUnchanged();
+		}
+	}
+
+	/**
+	 * This method reads the existing contents of the target, and reports the
+	 * bytes read to the default merge listener.
+	 *
+	 * @return the existing contents, or null if the target does not exist
+	 */
+
+	protected String readExisting(File target) throws IOException {
+		existingWithoutHashTrailer = isWithoutHashTrailer(target);
+		if (existingWithoutHashTrailer) {
+			return null;
+		}
+		MergeListener listener = MergeSession.getDefaultListener();
+		if (listener == MergeListener.NONE) {
+			return FileUtil.readIfExists(target);
+		}
+		long start = System.nanoTime();
+		String contents = FileUtil.readIfExists(target);
+		if (contents != null) {
+			listener.phase(getTargetName(), MergeListener.Phase.Read, System.nanoTime() - start, target.length(), -1);
 		}
+		return contents;
+	}
+
+	/**
+	 * This method reads the trailer from the end of a target that is about to be 
+	 * written over with hash lines, without reading the whole target. A target 
+	 * without a hash trailer has no generated lines that can be told apart, 
+	 * so it is reported as modified without reading it, as the merge would.
+	 */
+	
+	private boolean isWithoutHashTrailer(File target) throws IOException {
+		if (!OutputBuffer.UseHashLines || outputMode != OutputMode.WRITE || !target.isFile() || target.length() == 0) {
+			return false;
+		}
+		HashTrailer trailer = HashTrailer.read(target.toPath());
+		return trailer == null || !(trailer.hasHashLine() || trailer.isConflicted());
+	}
+
+	private void contentUnchanged() {
+		addMessage("Content unchanged for " + getTargetName());
+		MergeSession.getDefaultListener().unchanged(getTargetName());
 	}
 	
 	protected boolean isOverwriteUnchangedFiles() {
@@ -294,16 +423,46 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 
 	protected void write() throws IOException, URISyntaxException {
 		if (getTarget() != null) {
+			MergeListener listener = MergeSession.getDefaultListener();
+			long start = listener == MergeListener.NONE && generationEvent == null ? 0 : System.nanoTime();
 			FileUtil.write(getTarget(), getNewContents());
+			if (listener != MergeListener.NONE) {
+				listener.phase(getTargetName(), MergeListener.Phase.Write, System.nanoTime() - start, getTarget().length(), -1);
+			}
+			if (generationEvent != null) {
+				generationEvent.write += System.nanoTime() - start;
+				generationEvent.written = true;
+			}
 		}
 
 		currentOutputFile = getTemplate().addOutputFile(getTargetName(), UriUtil.fileToUri(getTarget()));
 
 		if (getOutputMode() == OutputMode.MERGE) {
-			for (LocatedRegion pr : module.getContext().getPartitioner().partition(getNewContents())
-					.getLocatedRegions()) {
+			addProtectedRegions();
+		}
+	}
+
+	/**
+	 * This method registers the protected regions of the written contents. When 
+	 * the merge placed the regions, only their slices are partitioned, to read 
+	 * their ids, otherwise the whole contents are.
+	 */
+
+	protected void addProtectedRegions() {
+		CompositePartitioner partitioner = module.getContext().getPartitioner();
+		List<RegionIndex.RegionSlice> slices = mergeStatus == StatusCode.MergedSuccessfully ? mergeResult.getRegionSlices() : null;
+		if (slices == null) {
+			for (LocatedRegion pr : partitioner.partition(getNewContents()).getLocatedRegions()) {
 				getCurrentOutputFile().addProtectedRegion(pr.getId(), pr.isEnabled(), pr.getOffset());
 			}
+			return;
+		}
+		String contents = getNewContents();
+		for (RegionIndex.RegionSlice slice : slices) {
+			for (LocatedRegion pr : partitioner.partition(contents.substring(slice.getStart(), slice.getEnd()))
+					.getLocatedRegions()) {
+				getCurrentOutputFile().addProtectedRegion(pr.getId(), pr.isEnabled(), slice.getStart() + pr.getOffset());
+			}
 		}
 	}
 
@@ -353,8 +512,22 @@ public class EglFileGeneratingTemplate extends EglPersistentTemplate {
 	}
 
 	public String getPositiveMessage() {
+		if (positiveMessage == null && getOutputMode() == OutputMode.MERGE) {
+			positiveMessage = addedLinesMessage();
+		}
 		return positiveMessage;
 	}
+	
+	/**
+	 * This method tells where lines have been added to the generated lines 
+	 * and preserved by the merge. Without a merge result (no hash line, or 
+	 * nothing to merge) no line was added by hand.
+	 */
+	
+	private String addedLinesMessage() {
+		return mergeResult == null ? MergingAndConflicts.addedLinesMessage(Collections.emptyList()) 
+			: mergeResult.getAddedLinesMessage();
+	}
 
 	public void setPositiveMessage(String positiveMessage) {
 		this.positiveMessage = positiveMessage;
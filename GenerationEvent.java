@@ -0,0 +1,59 @@
+package org.eclipse.epsilon.egl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * The Flight Recorder event of writing one generated file, from comparing
+ * the new contents with the existing ones to writing the target. The merge
+ * it runs, if any, has its own MergeEvent.
+ */
+
+@Name("org.eclipse.epsilon.egl.Generation")
+@Label("EGL Generation")
+@Category({ "EGL", "Generation" })
+@Description("The template output written to, or merged into, a target file")
+class GenerationEvent extends Event {
+
+	@Label("Target")
+	String target;
+
+	@Label("Output Mode")
+	String outputMode;
+
+	@Label("Status")
+	@Description("The status of the merge, if there was one")
+	String status;
+
+	@Label("Written")
+	boolean written;
+
+	@Label("Lines")
+	@Description("Lines of the new contents")
+	int lines;
+
+	@Label("Existing Lines")
+	@Description("Lines of the existing contents, 0 if there were none")
+	int existingLines;
+
+	@Label("Write")
+	@Timespan(Timespan.NANOSECONDS)
+	long write;
+
+	/**
+	 * @return the lines of the text, only counted when the event is committed
+	 */
+
+	static int lines (String text) {
+		if (text == null || text.isEmpty())
+			return 0;
+		int lines = 1;
+		for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1))
+			++lines;
+		return lines;
+	}
+}
@@ -0,0 +1,350 @@
+package org.eclipse.epsilon.egl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class GenerationIndex implements Closeable {
+
+	/**
+	 * The system property naming the index file, generation is not indexed when it is not set
+	 */
+
+	public static final String INDEX_PROPERTY = "egl.generationIndex";
+
+	/**
+	 * A target modified this close to the time it was recorded may be changed
+	 * again within the same modification time on a file system with a coarse 
+	 * clock (FAT keeps 2 seconds), so its size and time are not trusted alone.
+	 */
+
+	static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	/**
+	 * What was known about a target after it was last generated: the size and
+	 * modification time of the file, when it was recorded, the hash of the 
+	 * text written to it and the hash of the template output it was generated from.
+	 */
+
+	public static class Fingerprint {
+
+		private final long size;
+		private final long modified;
+		private final long recorded;
+		private final long contentHash;
+		private final long outputHash;
+
+		Fingerprint (long size, long modified, long recorded, long contentHash, long outputHash) {
+			this.size = size;
+			this.modified = modified;
+			this.recorded = recorded;
+			this.contentHash = contentHash;
+			this.outputHash = outputHash;
+		}
+
+		public long getSize () {
+			return size;
+		}
+
+		public long getModified () {
+			return modified;
+		}
+
+		/**
+		 * @return when the target was recorded, in nanoseconds since the epoch
+		 */
+
+		public long getRecorded () {
+			return recorded;
+		}
+
+		/**
+		 * @return true if the target was recorded too soon after it was modified
+		 * for its modification time to tell a later edit apart
+		 */
+
+		public boolean isRacy () {
+			return recorded - modified < RACY_NANOS;
+		}
+
+		public long getContentHash () {
+			return contentHash;
+		}
+
+		public long getOutputHash () {
+			return outputHash;
+		}
+	}
+
+	private static volatile GenerationIndex defaultIndex;
+
+	/**
+	 * Fields that used in this class. Changes are appended to a journal next
+	 * to the index file, and folded into the index file when it is opened.
+	 */
+
+	private final Path file;
+	private final Path journal;
+	private final Map<String, Fingerprint> entries = new ConcurrentHashMap<>();
+	private Writer journalWriter;
+	private boolean broken;
+
+	private GenerationIndex (Path file) {
+		this.file = file;
+		this.journal = file.resolveSibling(file.getFileName() + ".journal");
+	}
+
+	/**
+	 * @return the index named by the egl.generationIndex system property, or null if it is not set
+	 */
+
+	public static GenerationIndex getDefault () {
+		String path = System.getProperty(INDEX_PROPERTY);
+		if (path == null || path.isEmpty()) {
+			return null;
+		}
+		GenerationIndex index = defaultIndex;
+		if (index == null || !index.file.equals(Paths.get(path).toAbsolutePath())) {
+			synchronized (GenerationIndex.class) {
+				index = defaultIndex;
+				if (index == null || !index.file.equals(Paths.get(path).toAbsolutePath())) {
+					index = open(Paths.get(path));
+					defaultIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * This method loads an index and replays its journal. Lines that were cut
+	 * short by an interrupted run fail their checksum and are skipped, so those
+	 * targets are simply generated again. The journal is then folded into a new
+	 * index file, which replaces the old one with an atomic move.
+	 *
+	 * @param file the index file, it does not need to exist
+	 * @return the index
+	 */
+
+	public static GenerationIndex open (Path file) {
+		GenerationIndex index = new GenerationIndex(file.toAbsolutePath());
+		try {
+			index.load(index.file);
+			index.load(index.journal);
+			index.compact();
+		} catch (IOException e) {
+			index.broken = true;
+		}
+		return index;
+	}
+
+	/**
+	 * This method checks if the target is still the file that was generated 
+	 * from the same template output last time, from its size, modification 
+	 * time and the output hash, without reading the target. Only a target 
+	 * recorded within RACY_NANOS of its modification is read: an edit in the 
+	 * same tick of a coarse clock keeps its time, so its text must hash as it 
+	 * did. Once that tick is over, the target is recorded again, so it is not 
+	 * read next time.
+	 *
+	 * @param target, output the template output that would be written to it
+	 * @return true if the target does not need to be generated again
+	 */
+
+	public boolean isUnchanged (File target, String output) {
+		Fingerprint last = entries.get(key(target));
+		if (last == null) {
+			return false;
+		}
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(target.toPath(), BasicFileAttributes.class);
+			if (!attributes.isRegularFile()
+					|| attributes.size() != last.getSize()
+					|| attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) != last.getModified()
+					|| hash(output) != last.getOutputHash()) {
+				return false;
+			}
+			if (!last.isRacy()) {
+				return true;
+			}
+			if (hash(new String(Files.readAllBytes(target.toPath()), Charset.defaultCharset())) != last.getContentHash()) {
+				return false;
+			}
+			if (now() - last.getModified() >= RACY_NANOS) {
+				put(key(target), new Fingerprint(last.getSize(), last.getModified(), now(), last.getContentHash(), last.getOutputHash()));
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public Fingerprint get (File target) {
+		return entries.get(key(target));
+	}
+
+	/**
+	 * This method records a target just after it has been written or found unchanged.
+	 * The target is not read back: its text is the one that was written, and 
+	 * only its size and modification time are taken from the disk.
+	 *
+	 * @param target, written the text of the target, output the template output
+	 */
+
+	public void record (File target, String written, String output) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(target.toPath(), BasicFileAttributes.class);
+			put(key(target), new Fingerprint(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+				now(), hash(written), hash(output)));
+		} catch (IOException e) {
+			forget(target);
+		}
+	}
+
+	private void put (String key, Fingerprint fingerprint) {
+		entries.put(key, fingerprint);
+		append(key, fingerprint);
+	}
+
+	/**
+	 * This method drops a target, so it is read and generated again next time.
+	 */
+
+	public void forget (File target) {
+		if (entries.remove(key(target)) != null) {
+			append(key(target), null);
+		}
+	}
+
+	/**
+	 * This method writes all entries to a temporary file, moves it over the index
+	 * file in one step and empties the journal. If the run stops in between,
+	 * the journal is replayed over the new index file, which gives the same entries.
+	 */
+
+	public synchronized void compact () throws IOException {
+		closeJournal();
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Fingerprint> entry : entries.entrySet()) {
+				out.write(line(entry.getKey(), entry.getValue()));
+			}
+		}
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		Files.deleteIfExists(journal);
+	}
+
+	private synchronized void append (String key, Fingerprint fingerprint) {
+		// a key that would split its line is kept in memory only
+		if (broken || key.indexOf('\n') >= 0) {
+			return;
+		}
+		try {
+			if (journalWriter == null) {
+				journalWriter = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			journalWriter.write(line(key, fingerprint));
+			journalWriter.flush();
+		} catch (IOException e) {
+			// stop persisting, the targets are generated again next time
+			broken = true;
+		}
+	}
+
+	/**
+	 * This method closes the journal. The index can still be used, the journal
+	 * is opened again by the next change.
+	 */
+
+	@Override
+	public synchronized void close () throws IOException {
+		closeJournal();
+	}
+
+	private void closeJournal () throws IOException {
+		if (journalWriter != null) {
+			journalWriter.close();
+			journalWriter = null;
+		}
+	}
+
+	private void load (Path path) throws IOException {
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return;
+		}
+		for (String line : lines) {
+			// size, modified, recorded, content hash, output hash, checksum, key
+			String[] fields = line.split("\t", 7);
+			if (fields.length != 7) {
+				continue;
+			}
+			try {
+				String key = fields[6];
+				long size = Long.parseLong(fields[0]);
+				Fingerprint fingerprint = size < 0 ? null : new Fingerprint(size, Long.parseLong(fields[1]),
+					Long.parseLong(fields[2]), Long.parseUnsignedLong(fields[3], 16), Long.parseUnsignedLong(fields[4], 16));
+				if (!line(key, fingerprint).equals(line + "\n")) {
+					continue;
+				}
+				if (fingerprint == null)
+					entries.remove(key);
+				else
+					entries.put(key, fingerprint);
+			} catch (NumberFormatException e) {
+				// a line cut short by an interrupted run
+			}
+		}
+	}
+
+	private static String line (String key, Fingerprint fingerprint) {
+		String fields = fingerprint == null ? "-1\t0\t0\t0\t0"
+			: fingerprint.getSize() + "\t" + fingerprint.getModified() + "\t" + fingerprint.getRecorded() + "\t"
+				+ Long.toHexString(fingerprint.getContentHash()) + "\t" + Long.toHexString(fingerprint.getOutputHash());
+		return fields + "\t" + Long.toHexString(hash(fields + "\t" + key)) + "\t" + key + "\n";
+	}
+
+	/**
+	 * @return the wall clock in nanoseconds since the epoch, as modification times are
+	 */
+
+	private static long now () {
+		return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+	}
+
+	private static String key (File target) {
+		return target.getAbsolutePath();
+	}
+
+	/**
+	 * The 64 bit hash the v2 hash lines use
+	 */
+
+	static long hash (CharSequence text) {
+		return LineHashes.hash64(text, 0, text.length());
+	}
+
+}
@@ -0,0 +1,196 @@
+package org.eclipse.epsilon.egl;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+public enum HashLineVersion {
+
+	/**
+	 * The hash line OutputBuffer writes: 4 Base64 characters per line, cut from
+	 * the String hash code of the line. Hashes are the packed characters.
+	 */
+
+	V1 {
+		@Override
+		public long hash (CharSequence text, int from, int to) {
+			return LineHashes.hashLine(text, from, to);
+		}
+
+		@Override
+		public Hashes decode (String hashLine) {
+			int[] packed = LineHashes.decode(hashLine);
+			long[] hashes = new long[packed.length];
+			for (int h = 0; h < packed.length; ++h)
+				hashes[h] = packed[h];
+			return new Hashes(hashes, 0, null);
+		}
+
+		@Override
+		public String hashLine (IndexedDocument clean) {
+			StringBuilder hashLine = new StringBuilder(4 * clean.getLineCount());
+			for (int l = 0; l < clean.getLineCount(); ++l)
+				hashLine.append(LineHashes.unpack((int) hash(clean.getContent(), clean.getLineStart(l), clean.getLineEnd(l))));
+			return hashLine.toString();
+		}
+	},
+
+	/**
+	 * "v2:" followed by the Base64, without padding, of: a version byte, a flags
+	 * byte, the line count, a 64 bit hash per line, the block hashes if the flags
+	 * say so, and a 64 bit checksum of all the bytes before it. The Base64 alphabet
+	 * has no '*' and no '-', so the hash line cannot end the comment it is in.
+	 * The block hashes are the block size and one hash of the text of every
+	 * BLOCK_SIZE lines, so a block of unchanged lines is confirmed at once.
+	 */
+
+	V2 {
+		@Override
+		public long hash (CharSequence text, int from, int to) {
+			return LineHashes.hash64(text, from, to);
+		}
+
+		@Override
+		public Hashes decode (String hashLine) {
+			String encoded = hashLine.trim();
+			if (!encoded.startsWith(V2_PREFIX))
+				return null;
+			byte[] bytes;
+			try {
+				bytes = Base64.getDecoder().decode(encoded.substring(V2_PREFIX.length()));
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+			if (bytes.length < HEADER + 8)
+				return null;
+			ByteBuffer in = ByteBuffer.wrap(bytes);
+			if (in.getLong(bytes.length - 8) != LineHashes.hash64(bytes, 0, bytes.length - 8))
+				return null;
+			if (in.get() != 2)
+				return null;
+			byte flags = in.get();
+			int count = in.getInt();
+			if (count < 0 || 8L * count > bytes.length - HEADER - 8)
+				return null;
+			long[] hashes = new long[count];
+			for (int h = 0; h < count; ++h)
+				hashes[h] = in.getLong();
+			int blockSize = 0;
+			long[] blocks = null;
+			if ((flags & BLOCK_HASHES) != 0) {
+				if (in.remaining() < 4 + 8)
+					return null;
+				blockSize = in.getInt();
+				if (blockSize <= 0)
+					return null;
+				blocks = new long[(count + blockSize - 1) / blockSize];
+			}
+			if (in.remaining() != 8L * (blocks == null ? 0 : blocks.length) + 8)
+				return null;
+			for (int b = 0; blocks != null && b < blocks.length; ++b)
+				blocks[b] = in.getLong();
+			return new Hashes(hashes, blockSize, blocks);
+		}
+
+		@Override
+		public String hashLine (IndexedDocument clean) {
+			int count = clean.getLineCount();
+			int blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			ByteBuffer out = ByteBuffer.allocate(HEADER + 8 * count + 4 + 8 * blockCount + 8);
+			out.put((byte) 2);
+			out.put(BLOCK_HASHES);
+			out.putInt(count);
+			for (int l = 0; l < count; ++l)
+				out.putLong(hash(clean.getContent(), clean.getLineStart(l), clean.getLineEnd(l)));
+			out.putInt(BLOCK_SIZE);
+			for (int first = 0; first < count; first += BLOCK_SIZE)
+				out.putLong(hash(clean.getContent(), clean.getLineStart(first), clean.getLineEnd(Math.min(first + BLOCK_SIZE, count) - 1)));
+			out.putLong(LineHashes.hash64(out.array(), 0, out.position()));
+			return V2_PREFIX + Base64.getEncoder().withoutPadding().encodeToString(out.array());
+		}
+	};
+
+	/**
+	 * The prefix of a v2 hash line, a v1 hash line is only Base64 characters so it never has one
+	 */
+
+	public static final String V2_PREFIX = "v2:";
+
+	/**
+	 * The number of lines covered by one block hash
+	 */
+
+	public static final int BLOCK_SIZE = 64;
+
+	// the version and flags bytes and the line count
+	private static final int HEADER = 6;
+
+	// flag set when the line hashes are followed by block hashes
+	private static final byte BLOCK_HASHES = 1;
+
+	/**
+	 * The hashes read from a hash line: one per line and, when the hash line
+	 * has them, one per block of lines. A block hash is the hash of the text of
+	 * the block's lines, from the start of its first line to the end of its last.
+	 */
+
+	public static final class Hashes {
+
+		private final long[] lines;
+		private final int blockSize;
+		private final long[] blocks;
+
+		Hashes (long[] lines, int blockSize, long[] blocks) {
+			this.lines = lines;
+			this.blockSize = blockSize;
+			this.blocks = blocks;
+		}
+
+		public long[] getLines () {
+			return lines;
+		}
+
+		public boolean hasBlocks () {
+			return blocks != null;
+		}
+
+		/**
+		 * @return the lines per block, 0 if there are no block hashes
+		 */
+
+		public int getBlockSize () {
+			return blockSize;
+		}
+
+		public long getBlock (int block) {
+			return blocks[block];
+		}
+	}
+
+	/**
+	 * @return the version the hash line was written in
+	 */
+
+	public static HashLineVersion of (String hashLine) {
+		return hashLine.startsWith(V2_PREFIX) ? V2 : V1;
+	}
+
+	/**
+	 * @return the hash of the characters from (inclusive) to (exclusive), never 0
+	 */
+
+	public abstract long hash (CharSequence text, int from, int to);
+
+	/**
+	 * @param hashLine
+	 * @return the line hashes, in line order, or null if the hash line is damaged
+	 */
+
+	public abstract Hashes decode (String hashLine);
+
+	/**
+	 * @param clean the content without regions
+	 * @return the hash line of its lines
+	 */
+
+	public abstract String hashLine (IndexedDocument clean);
+}
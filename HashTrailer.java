@@ -0,0 +1,249 @@
+package org.eclipse.epsilon.egl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.epsilon.egl.output.OutputBuffer;
+
+public class HashTrailer {
+
+	/**
+	 * The marker line added after the trailer of a file that has a conflict
+	 */
+
+	public static final String CONFLICTED = "conflicted";
+
+	/**
+	 * Fields that used in this class: the three trailer lines (comment start,
+	 * hash line and comment end), if a conflicted marker follows them, and
+	 * the offset where the body before the trailer ends.
+	 */
+
+	private final String commentStart;
+	private final String hashLine;
+	private final String commentEnd;
+	private final boolean conflicted;
+	private final long bodyEnd;
+
+	private HashTrailer (String commentStart, String hashLine, String commentEnd, boolean conflicted, long bodyEnd) {
+		this.commentStart = commentStart;
+		this.hashLine = hashLine;
+		this.commentEnd = commentEnd;
+		this.conflicted = conflicted;
+		this.bodyEnd = bodyEnd;
+	}
+
+	public String getCommentStart () {
+		return commentStart;
+	}
+
+	public String getHashLine () {
+		return hashLine;
+	}
+
+	public String getCommentEnd () {
+		return commentEnd;
+	}
+
+	/**
+	 * @return the comment start, hash line and comment end
+	 */
+
+	public List<String> getLines () {
+		return Collections.unmodifiableList(Arrays.asList(commentStart, hashLine, commentEnd));
+	}
+
+	public boolean isConflicted () {
+		return conflicted;
+	}
+
+	/**
+	 * @return true if the trailer ends with a comment end, as a hash trailer does
+	 */
+
+	public boolean hasHashLine () {
+		return !conflicted && (commentEnd.startsWith("*/") || commentEnd.startsWith("-->"));
+	}
+
+	/**
+	 * @return where the body ends, in chars for content and in bytes for files;
+	 * the "\n" before the trailer is not part of the body
+	 */
+
+	public long getBodyEnd () {
+		return bodyEnd;
+	}
+
+	/**
+	 * This method reads the trailer by scanning backwards from the end of the content,
+	 * so it only looks at the last lines however long the content is.
+	 * A conflicted marker after the trailer is recognised and skipped.
+	 *
+	 * @param content
+	 * @return the trailer, or null if the content has fewer than three lines
+	 */
+
+	public static HashTrailer read (CharSequence content) {
+		int end = content.length();
+		boolean conflicted = false;
+		int lastStart = lineStartBefore(content, end);
+		if (lastStart > 0 && CONFLICTED.contentEquals(content.subSequence(lastStart, end))) {
+			conflicted = true;
+			end = lastStart - 1;
+		}
+		int closeStart = lineStartBefore(content, end);
+		if (closeStart <= 0)
+			return null;
+		int hashStart = lineStartBefore(content, closeStart - 1);
+		if (hashStart <= 0)
+			return null;
+		int openStart = lineStartBefore(content, hashStart - 1);
+		return new HashTrailer(
+			content.subSequence(openStart, hashStart - 1).toString(),
+			content.subSequence(hashStart, closeStart - 1).toString(),
+			content.subSequence(closeStart, end).toString(),
+			conflicted,
+			Math.max(openStart - 1, 0));
+	}
+
+	/**
+	 * This method reads the trailer of a file without reading the whole file.
+	 * It reads blocks backwards from the end of the file until the start of
+	 * the trailer is found, so the cost depends on the trailer size only.
+	 *
+	 * @param file
+	 * @return the trailer, or null if the file has fewer than three lines
+	 */
+
+	public static HashTrailer read (Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return read(channel);
+		}
+	}
+
+	public static HashTrailer read (FileChannel channel) throws IOException {
+		long size = channel.size();
+		int block = (int) Math.min(size, 4096);
+		while (true) {
+			long from = size - block;
+			ByteBuffer tail = ByteBuffer.allocate(block);
+			while (tail.hasRemaining() && channel.read(tail, from + tail.position()) >= 0) {
+				// read the whole block
+			}
+			byte[] bytes = Arrays.copyOf(tail.array(), tail.position());
+			// the trailer and the conflicted marker hold at most 4 newlines, so the text
+			// after the 5th newline from the end holds all of the trailer and the newline
+			// before it. "\n" is never part of a multi-byte character, so that text can
+			// be decoded on its own.
+			int cut = newlineBefore(bytes, 5);
+			if (cut >= 0 || from == 0) {
+				cut = Math.max(cut, 0);
+				String text = new String(bytes, cut, bytes.length - cut, StandardCharsets.UTF_8);
+				HashTrailer trailer = read(text);
+				if (trailer == null)
+					return null;
+				// the offset in bytes is the bytes of the text before the trailer
+				long bodyEnd = from + cut + text.substring(0, (int) trailer.bodyEnd).getBytes(StandardCharsets.UTF_8).length;
+				return new HashTrailer(trailer.commentStart, trailer.hashLine, trailer.commentEnd, trailer.conflicted, bodyEnd);
+			}
+			block = (int) Math.min(size, (long) block * 4);
+		}
+	}
+
+	/**
+	 * This method appends a v2 trailer for the original content to the body,
+	 * with the comment delimiters and line ends of the trailer it replaces.
+	 * Without a trailer to follow, OutputBuffer appends its own.
+	 *
+	 * @param body, original the content the hashes are made from, like the trailer being replaced
+	 * @return the body followed by the trailer
+	 */
+
+	public static String append (String body, String original, HashTrailer like) {
+		if (like == null)
+			return OutputBuffer.documentWithAppendedHashLine(body, original);
+		String hashLine = HashLineVersion.V2.hashLine(new IndexedDocument(OutputBuffer.contentWithoutRegions(original)));
+		String cr = like.commentStart.endsWith("\r") ? "\r" : "";
+		StringBuilder document = new StringBuilder(body.length() + hashLine.length() + 16);
+		document.append(body).append('\n')
+			.append(like.commentStart).append('\n')
+			.append(hashLine).append(cr).append('\n')
+			.append(like.commentEnd);
+		return document.toString();
+	}
+
+	/**
+	 * This method checks if there is a hash line at the end of the content.
+	 */
+
+	public static boolean hasHashLine (CharSequence content) {
+		int end = content.length();
+		int lastStart = lineStartBefore(content, end);
+		if (lastStart <= 0)
+			return false;
+		// at least three lines
+		if (lineStartBefore(content, lastStart - 1) <= 0)
+			return false;
+		return startsWith(content, lastStart, "*/") || startsWith(content, lastStart, "-->");
+	}
+
+	/**
+	 * This method removes a number of lines from the end of the content,
+	 * scanning backwards only over the removed lines.
+	 *
+	 * @param content, numLines
+	 * @return the content without its last numLines lines
+	 */
+
+	public static String removeEndLines (String content, int numLines) {
+		int end = content.length();
+		for (int i = 0; i < numLines; ++i) {
+			int newline = content.lastIndexOf('\n', end - 1);
+			if (newline < 0) {
+				if (i == numLines - 1)
+					return "";
+				throw new IndexOutOfBoundsException("The content has fewer than " + numLines + " lines");
+			}
+			end = newline;
+		}
+		return content.substring(0, end);
+	}
+
+	/**
+	 * @return the start of the line that ends at end
+	 */
+
+	private static int lineStartBefore (CharSequence content, int end) {
+		int i = end - 1;
+		while (i >= 0 && content.charAt(i) != '\n')
+			--i;
+		return i + 1;
+	}
+
+	/**
+	 * @return the offset just after the n-th newline from the end, or -1 if there are fewer
+	 */
+
+	private static int newlineBefore (byte[] bytes, int n) {
+		for (int i = bytes.length - 1; i >= 0; --i)
+			if (bytes[i] == '\n' && --n == 0)
+				return i + 1;
+		return -1;
+	}
+
+	private static boolean startsWith (CharSequence content, int from, String prefix) {
+		if (content.length() - from < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); ++i)
+			if (content.charAt(from + i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+}
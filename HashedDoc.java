@@ -1,11 +1,9 @@
 package org.eclipse.epsilon.egl;
 //2/2/2021 ... , I added two new method to get the content of original file, 
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Base64;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.epsilon.egl.output.OutputBuffer;
@@ -17,9 +15,18 @@ public class HashedDoc {
 	 */
 	
 	List<String> lines;
+	private HashTrailer trailer;
 	private String body;
 	private String oldHash;
 	private String newHash;
+	private HashLineVersion version = HashLineVersion.V1;
+	
+	// computed lazily and shared by every query on this document
+	private HashLineVersion.Hashes oldHashes;
+	private IndexedDocument cleanDoc;
+	private long[] cleanHashes;
+	private int[] matchedLines;
+	private LineAlignment alignment;
 	
 	/** 
 	 * @param fileContent the file to be represented by this HashedDoc
@@ -27,36 +34,51 @@ public class HashedDoc {
 	
 	public HashedDoc (String fileContent) {
 		
-		if (fileContent == "") {
-			lines = new ArrayList<>();
+		if (fileContent.isEmpty()) {
+			lines = new IndexedDocument("").getLines(0, 0);
 			body = "";
 			oldHash = "";
 			newHash = "";
 			return;
 		}
 		
-		// looking for the last three lines and remove them
-		{
-			String[] linesArr = fileContent.split("\n", -1);
-			oldHash = linesArr[linesArr.length - 2];
-			lines = new ArrayList<String>(Arrays.asList(linesArr));
-			lines.remove(lines.size() - 1);
-			lines.remove(lines.size() - 1);
-			lines.remove(lines.size() - 1);
+		// the last three lines are the hash trailer, read from the end of the content
+		trailer = HashTrailer.read(fileContent);
+		if (trailer == null) {
+			// too short to have a trailer, an empty hash line that no line matches 
+			// reports it as modified
+			oldHash = "";
+			body = fileContent;
+			return;
 		}
-		body = String.join("\n", lines);
-		newHash = OutputBuffer.makeHashLine(body);
+		oldHash = trailer.getHashLine();
+		version = HashLineVersion.of(oldHash);
+		body = fileContent.substring(0, (int) trailer.getBodyEnd());
 	}
 	
 	public String getOldHash(boolean asDoc) {
 		return asDoc ? makeHashDoc(oldHash) : oldHash; //XbK6CQ==q3PAAA==MPU=fQ==
 	}
 	
+	/**
+	 * @return the hash line of the body, in the version of the trailer it was read with
+	 */
+	
 	public String getNewHash(boolean asDoc) {
+		// only hashed when asked for, the merge compares the hashes line by line
+		if (newHash == null)
+			newHash = version.hashLine(cleanDoc());
 		return asDoc ? makeHashDoc(newHash) : newHash;
 	}
 	
+	public HashLineVersion getVersion() {
+		return version;
+	}
+	
 	public List<String> getLines() {
+		// the body is only indexed by line when its lines are asked for
+		if (lines == null)
+			lines = new IndexedDocument(body).getLines();
 		return lines;
 	}
 	
@@ -65,13 +87,66 @@ public class HashedDoc {
 	}
 	
 	/**
-	 * This method to transforms a hash line into a hash list
+	 * @return the last three lines of the file: comment start, hash line and comment end
+	 */
+	
+	public List<String> getTrailer() {
+		return trailer == null ? Collections.emptyList() : trailer.getLines();
+	}
+	
+	HashTrailer getHashTrailer() {
+		return trailer;
+	}
+	
+	/**
+	 * @return the lines the trailer has hashes for, and the lines of the body without regions
+	 */
+	
+	int getOriginalLineCount() {
+		return oldHashes().getLines().length;
+	}
+	
+	int getCleanLineCount() {
+		return cleanDoc().getLineCount();
+	}
+	
+	/**
+	 * This method to transforms a hash line into a hash list,
+	 * a v2 hash line gives one hexadecimal hash per line
 	 * 
 	 * @param hashLine
 	 */
 	
-	private static String makeHashDoc (String hashLine) {
-		return String.join("\n", hashLine.split("(?<=\\G....)"));
+	private String makeHashDoc (String hashLine) {
+		if (version == HashLineVersion.V1)
+			return String.join("\n", splitHashLine(hashLine));
+		HashLineVersion.Hashes decoded = version.decode(hashLine);
+		if (decoded == null)
+			return "";
+		long[] hashes = decoded.getLines();
+		StringBuilder hashDoc = new StringBuilder(17 * hashes.length);
+		for (int h = 0; h < hashes.length; ++h) {
+			if (h > 0)
+				hashDoc.append('\n');
+			hashDoc.append(Long.toHexString(hashes[h]));
+		}
+		return hashDoc.toString();
+	}
+	
+	/**
+	 * This method cuts a hash line into its 4 characters hashes.
+	 * An empty hash line gives one empty hash, as the regex split it replaces did.
+	 */
+	
+	private static String[] splitHashLine (String hashLine) {
+		if (hashLine.isEmpty()) {
+			return new String[] { "" };
+		}
+		String[] hashes = new String[(hashLine.length() + 3) / 4];
+		for (int h = 0; h < hashes.length; ++h) {
+			hashes[h] = hashLine.substring(4 * h, Math.min(4 * h + 4, hashLine.length()));
+		}
+		return hashes;
 	}
 	
 	/**
@@ -85,18 +160,105 @@ public class HashedDoc {
 	
 	// Extracting original contents from modified contents
 	public String originalContent () {
-		List<String> originalLines = new ArrayList<>();
-		String[] hashes = getOldHash(true).split("\n"); //[XbK6, CQ==, l1dz, ASA=, ZXyh, ASA=, q3PA, ASA=, iZ4f, MPU=, fQ==]
-		String[] cleanLines = OutputBuffer.contentWithoutRegions(body).split("\n", -1); // new lines
-		int l;
-		int h;
-		for (l = 0, h = 0; l < cleanLines.length && h < hashes.length; ++l)
-			// Lines..all lines in generated files with added lines as well.
-			if (OutputBuffer.hashLine(cleanLines[l]).equals(hashes[h])) { 
-				originalLines.add(cleanLines[l]);
-				++h;
+		return originalContent(baseLines(null));
+	}
+	
+	/**
+	 * @param base the clean line of each original line, see baseLines
+	 * @return original content without regions
+	 */
+	
+	String originalContent (int[] base) {
+		IndexedDocument clean = cleanDoc();
+		StringBuilder originalLines = new StringBuilder(clean.getContent().length());
+		boolean first = true;
+		for (int line : base) {
+			if (line < 0)
+				continue;
+			if (!first)
+				originalLines.append('\n');
+			originalLines.append(clean.getContent(), clean.getLineStart(line), clean.getLineEnd(line));
+			first = false;
+		}
+		return originalLines.toString();
+	}
+	
+	/**
+	 * This method finds the clean line of each original line, for the base of 
+	 * a merge. The lines are the ones of the alignment, so a hash that occurs 
+	 * more than once is matched where the lines around it put it.
+	 * 
+	 * Lines with the same hash but not the same text cannot be told apart by 
+	 * their hashes: v1 hashes keep the top bits of String.hashCode, so "return 
+	 * field7;" and "return field9;" collide, and a copy of one the user put next
+	 * to the other can take its place. When the lines between the neighbours of 
+	 * an original line have more than one text with its hash, the original 
+	 * lines are aligned with the template lines the same way, and the line with 
+	 * the text of the template line the original line is aligned with is taken. 
+	 * If the template does not have the line, the alignment is kept.
+	 * 
+	 * @param template the new content without regions, or null to keep the alignment
+	 * @return the clean line of each original line, -1 for the lines that are missing
+	 */
+	
+	int[] baseLines (String template) {
+		int[] base = alignment().getMatched().clone();
+		long[] hashes = oldHashes().getLines();
+		IndexedDocument clean = cleanDoc();
+		// the next matched line after each original line, the end of its candidates
+		int[] next = new int[base.length];
+		for (int e = base.length - 1, line = clean.getLineCount(); e >= 0; --e) {
+			next[e] = line;
+			if (base[e] >= 0)
+				line = base[e];
+		}
+		IndexedDocument templateDoc = null;
+		int[] inTemplate = null;
+		int previous = -1;
+		for (int e = 0; e < base.length; ++e) {
+			int line = base[e];
+			if (line < 0)
+				continue;
+			if (template != null && hasTextTie(previous + 1, next[e], line, hashes[e])) {
+				if (templateDoc == null) {
+					templateDoc = new IndexedDocument(template);
+					long[] templateHashes = new long[templateDoc.getLineCount()];
+					for (int t = 0; t < templateHashes.length; ++t)
+						templateHashes[t] = version.hash(templateDoc.getContent(), templateDoc.getLineStart(t), templateDoc.getLineEnd(t));
+					inTemplate = LineAlignment.align(hashes, templateHashes).getMatched();
+				}
+				if (inTemplate[e] >= 0) {
+					String generated = templateDoc.getLine(inTemplate[e]);
+					for (int l = previous + 1; l < next[e]; ++l) {
+						if (cleanHashAt(l) == hashes[e] && clean.getLine(l).equals(generated)) {
+							base[e] = l;
+							break;
+						}
+					}
+				}
 			}
-		return String.join("\n", originalLines);
+			previous = base[e];
+		}
+		return base;
+	}
+	
+	/**
+	 * @return true if a clean line from (inclusive) to (exclusive) has the hash 
+	 * of the matched line but not its text
+	 */
+	
+	private boolean hasTextTie (int from, int to, int matched, long hash) {
+		IndexedDocument clean = cleanDoc();
+		String text = null;
+		for (int l = from; l < to; ++l) {
+			if (l == matched || cleanHashAt(l) != hash)
+				continue;
+			if (text == null)
+				text = clean.getLine(matched);
+			if (!clean.getLine(l).equals(text))
+				return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -110,58 +272,235 @@ public class HashedDoc {
 
 	// Detecting if any of the generated content has been modified and return a message...
 	public boolean allOriginalLinesPresent () {
-		String[] hashes = getOldHash(true).split("\n", -1);
-		String[] cleanLines = OutputBuffer.contentWithoutRegions(body).split("\n", -1);
-		int h = 0;
-		for (int l = 0; l < cleanLines.length && h < hashes.length; ++l)
-			if (OutputBuffer.hashLine(cleanLines[l]).equals(hashes[h]))
-				++h;
+		return matchedLines().length == oldHashes().getLines().length;
+	}
+	
+	/**
+	 * @return true if the body is still exactly the lines its trailer was made from
+	 */
+	
+	public boolean isUnmodified () {
+		return allOriginalLinesPresent() && matchedLines().length == cleanDoc().getLineCount();
+	}
+	
+	/**
+	 * This method matches the old hashes, in order, against the lines of the 
+	 * content without regions. Lines that do not match were added by the user.
+	 * The match only tells whether every original line is present, the lines 
+	 * of the base and the added lines are the ones of the alignment.
+	 * 
+	 * When the trailer has block hashes, the match tries each block once, at the
+	 * line where its first hash would be matched: if the text of the next lines 
+	 * hashes to the block hash, all of its lines match in a row, as they would 
+	 * one by one. Only blocks that changed are matched line by line, so an 
+	 * untouched block costs one hash and no per-line work.
+	 * 
+	 * @return the index of the clean line matched by each old hash, as many as were found
+	 */
+	
+	private int[] matchedLines () {
+		if (matchedLines == null) {
+			HashLineVersion.Hashes expected = oldHashes();
+			long[] hashes = expected.getLines(); // XbK6, CQ==, l1dz, ASA=, ZXyh, ASA=, q3PA, ASA=, iZ4f, MPU=, fQ== packed as ints
+			IndexedDocument clean = cleanDoc();
+			int lineCount = clean.getLineCount();
+			int blockSize = expected.getBlockSize();
+			int[] matched = new int[Math.min(hashes.length, lineCount)];
+			int h = 0;
+			int triedBlock = -1;
+			for (int l = 0; l < lineCount && h < hashes.length; ) {
+				if (blockSize > 0 && h % blockSize == 0 && h / blockSize != triedBlock) {
+					triedBlock = h / blockSize;
+					int size = Math.min(blockSize, hashes.length - h);
+					if (l + size <= lineCount && expected.getBlock(triedBlock)
+							== version.hash(clean.getContent(), clean.getLineStart(l), clean.getLineEnd(l + size - 1))) {
+						for (int end = h + size; h < end; )
+							matched[h++] = l++;
+						continue;
+					}
+				}
+				// Lines..all lines in generated files with added lines as well.
+				if (cleanHashAt(l) == hashes[h])
+					matched[h++] = l;
+				++l;
+			}
+			matchedLines = h == matched.length ? matched : Arrays.copyOf(matched, h);
+		}
+		return matchedLines;
+	}
+	
+	private HashLineVersion.Hashes oldHashes () {
+		if (oldHashes == null) {
+			oldHashes = version.decode(oldHash);
+			// a damaged v2 hash line fails its checksum, one hash that no line matches reports it as modified
+			if (oldHashes == null)
+				oldHashes = new HashLineVersion.Hashes(new long[1], 0, null);
+		}
+		return oldHashes;
+	}
+	
+	private IndexedDocument cleanDoc () {
+		if (cleanDoc == null)
+			cleanDoc = new IndexedDocument(OutputBuffer.contentWithoutRegions(body));
+		return cleanDoc;
+	}
+	
+	/**
+	 * Every line of the content without regions is hashed at most once.
+	 */
+	
+	private long cleanHashAt (int l) {
+		IndexedDocument clean = cleanDoc();
+		if (cleanHashes == null)
+			cleanHashes = new long[clean.getLineCount()];
+		// 0 is never a line hash, so it marks a line that is not hashed yet
+		long hash = cleanHashes[l];
+		if (hash == 0) {
+			hash = version.hash(clean.getContent(), clean.getLineStart(l), clean.getLineEnd(l));
+			cleanHashes[l] = hash;
+		}
+		return hash;
+	}
+	
+	/**
+	 * A run of original generated lines that is missing from the content:
+	 * Line is the first missing line of the original content and Lines how
+	 * many there are. At is the line of the content without regions where they
+	 * were expected, and Replacing how many lines are in their place now, 
+	 * none when the lines were deleted rather than modified.
+	 */
+	
+	public static class LinesPerLine {
+		
+		private final int line;
+		private final int lines;
+		private final int at;
+		private final int replacing;
+		
+		LinesPerLine (int line, int lines, int at, int replacing) {
+			this.line = line;
+			this.lines = lines;
+			this.at = at;
+			this.replacing = replacing;
+		}
+		
+		public int getLine() {
+			return line;
+		}
+		
+		public int getLines() {
+			return lines;
+		}
+		
+		public int getAt() {
+			return at;
+		}
+		
+		public int getReplacing() {
+			return replacing;
+		}
 		
-		return h == hashes.length;
-	}
-	
-//	// New changes... to detect where exactlly line/s have been deleted or modified
-//	public class LinesPerLine {
-//		public int Line;
-//		public int Lines;
-//	}
-//	// until here
-	
-	/**
-	 * This method checks where aut-generated line/s has been modified or deleted
-	 */
-	
-//	// New changes... to detect where exactlly line/s have been deleted or modified
-//	public List<LinesPerLine> missingOriginalLines() {
-//		String[] hashes = getOldHash(true).split("\n", -1); //[XbK6, CQ==, q3PA, AA==, MPU=, fQ==]
-//		String[] cleanLines = OutputBuffer.contentWithoutRegions(body).split("\n", -1); //[public class TemperatureController {, 	, 	public int execute(int temperature, int targetTemperature) , , 	}	, }]
-//		List<LinesPerLine> missingLines = new ArrayList<>(); // []
-//		int consecutiveLost = 0;
-//		LinesPerLine lpl = null;
-//		for (int h = 0, last = -1; h < hashes.length; ++h) {
-//			boolean found = false;
-//			for (int l = Math.max(last, 0); l < cleanLines.length; ++l)
-//				if (OutputBuffer.hashLine(cleanLines[l]).equals(hashes[h])) {
-//					found = true;
-//					last = l;
-//					consecutiveLost = 0;
-//					break;
-//				}
-//			if (!found) {
-//				if (consecutiveLost == 0) {
-//					lpl = new LinesPerLine();
-//					lpl.Line = last + 1;
-//					lpl.Lines = 1;
-//					missingLines.add(lpl);
-//				} else {
-//					++lpl.Lines;
-//				}
-//				++consecutiveLost;
-//			}
-//		}
-//		return missingLines;
-//	}
-//  //until here
+		public boolean isDeleted() {
+			return replacing == 0;
+		}
+		
+		@Override
+		public String toString() {
+			return (lines == 1 ? "line " + (line + 1) : "lines " + (line + 1) + "-" + (line + lines))
+				+ (isDeleted() ? " deleted" : " modified") + " at line " + (at + 1);
+		}
+	}
+	
+	/**
+	 * A run of lines added to the generated content: Lines lines, the first 
+	 * one after line After of the content without regions.
+	 */
+	
+	public static class AddedLines {
+		
+		private final int after;
+		private final int lines;
+		
+		AddedLines (int after, int lines) {
+			this.after = after;
+			this.lines = lines;
+		}
+		
+		public int getAfter() {
+			return after;
+		}
+		
+		public int getLines() {
+			return lines;
+		}
+	}
+	
+	/**
+	 * This method lists the lines that were added to the generated content.
+	 * They are the lines the alignment left unmatched, so the runs come out 
+	 * in one pass, without comparing the contents again.
+	 * 
+	 * @return the added runs, in order
+	 */
+	
+	public List<AddedLines> addedLines() {
+		return addedLines(baseLines(null));
+	}
+	
+	/**
+	 * @param base the clean line of each original line, see baseLines
+	 * @return the added runs, in order
+	 */
+	
+	List<AddedLines> addedLines(int[] base) {
+		int lineCount = cleanDoc().getLineCount();
+		List<AddedLines> added = new ArrayList<>();
+		int next = 0;
+		for (int h = 0; h <= base.length; ++h) {
+			int line = h < base.length ? base[h] : lineCount;
+			if (line < 0)
+				continue;
+			if (line > next)
+				added.add(new AddedLines(next, line - next));
+			next = line + 1;
+		}
+		return added;
+	}
+	
+	/**
+	 * This method checks where aut-generated line/s has been modified or deleted.
+	 * The original lines are aligned with the content without regions by
+	 * LineAlignment, which anchors on lines that occur once, so every missing
+	 * run is reported where it is, not only the first one.
+	 * 
+	 * @return the missing runs in order, empty if all the original lines are present
+	 */
+	
+	public List<LinesPerLine> missingOriginalLines() {
+		if (allOriginalLinesPresent())
+			return Collections.emptyList();
+		List<LinesPerLine> missingLines = new ArrayList<>();
+		for (LineAlignment.Gap gap : alignment().getGaps())
+			missingLines.add(new LinesPerLine(gap.getExpectedFrom(), gap.getExpectedTo() - gap.getExpectedFrom(),
+				gap.getActualFrom(), gap.getActualTo() - gap.getActualFrom()));
+		return missingLines;
+	}
+	
+	/**
+	 * The alignment hashes every line of the content without regions, so it is 
+	 * only made when positions are needed: for the missing lines, the base of 
+	 * the merge and the added lines. The presence check uses matchedLines.
+	 */
+	
+	LineAlignment alignment() {
+		if (alignment == null) {
+			long[] actual = new long[cleanDoc().getLineCount()];
+			for (int l = 0; l < actual.length; ++l)
+				actual[l] = cleanHashAt(l);
+			alignment = LineAlignment.align(oldHashes().getLines(), actual);
+		}
+		return alignment;
+	}
 	
 	/**
 	 * This method uses to check if there is a hash 
@@ -173,11 +512,7 @@ public class HashedDoc {
 
 	// check if the lastLine contian hash or not
 	public static boolean hasHashLine(String content) {
-		String[] linesArr = content.split("\n", -1);
-		if (linesArr.length < 3)
-			return false;
-		String lastLine = linesArr[linesArr.length - 1];
-		return lastLine.startsWith("*/") || lastLine.startsWith("-->");
+		return HashTrailer.hasHashLine(content);
 	}
 	
 	/**
@@ -186,11 +521,6 @@ public class HashedDoc {
 	
 	// remove last line = conflicted
 	public static String removeEndLines (String document, int numLines) {
-		String[] linesArr = document.split("\n", -1);
-		List<String> lines = new ArrayList<>(Arrays.asList(linesArr));
-		for (int i = 0; i < numLines; ++i) {
-			lines.remove(lines.size() - 1);
-		}
-		return String.join("\n", lines);
+		return HashTrailer.removeEndLines(document, numLines);
 	}
 }
\ No newline at end of file
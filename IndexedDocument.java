@@ -0,0 +1,153 @@
+package org.eclipse.epsilon.egl;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+public class IndexedDocument {
+
+	/**
+	 *  Fields that used in this class
+	 */
+
+	private final String content;
+	// lineStarts[i] is the offset of line i, the extra last entry is content.length() + 1
+	private final int[] lineStarts;
+	private final int lineCount;
+
+	/**
+	 * Scans the content once and records the start offset of every line.
+	 * Lines are separated by "\n" and counted the same way as split("\n", -1),
+	 * so an empty content has one empty line.
+	 *
+	 * @param content the document to be indexed
+	 */
+
+	public IndexedDocument (String content) {
+		this.content = content;
+		int[] starts = new int[64];
+		int count = 0;
+		starts[count++] = 0;
+		for (int i = content.indexOf('\n'); i >= 0; i = content.indexOf('\n', i + 1)) {
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+			}
+			starts[count++] = i + 1;
+		}
+		if (count == starts.length) {
+			starts = Arrays.copyOf(starts, count + 1);
+		}
+		starts[count] = content.length() + 1;
+		lineStarts = starts;
+		lineCount = count;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return the offset of the first character of the line
+	 */
+
+	public int getLineStart(int line) {
+		checkLine(line);
+		return lineStarts[line];
+	}
+
+	/**
+	 * @return the offset just after the last character of the line, not including the "\n"
+	 */
+
+	public int getLineEnd(int line) {
+		checkLine(line);
+		return lineStarts[line + 1] - 1;
+	}
+
+	public String getLine(int line) {
+		checkLine(line);
+		return content.substring(lineStarts[line], lineStarts[line + 1] - 1);
+	}
+
+	/**
+	 * This method returns the lines from (inclusive) to (exclusive) joined by "\n",
+	 * taken as one substring of the content rather than joined line by line.
+	 *
+	 * @param from, to
+	 * @return the text of the lines
+	 */
+
+	public String getText(int from, int to) {
+		checkRange(from, to);
+		if (from == to) {
+			return "";
+		}
+		return content.substring(lineStarts[from], lineStarts[to] - 1);
+	}
+
+	/**
+	 * This method returns a read-only view of the lines from (inclusive) to (exclusive).
+	 * Each line is only cut out of the content when it is asked for.
+	 *
+	 * @param from, to
+	 * @return a list view of the lines
+	 */
+
+	public List<String> getLines(int from, int to) {
+		checkRange(from, to);
+		return new LinesView(from, to);
+	}
+
+	public List<String> getLines() {
+		return getLines(0, lineCount);
+	}
+
+	private void checkLine(int line) {
+		if (line < 0 || line >= lineCount) {
+			throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+		}
+	}
+
+	private void checkRange(int from, int to) {
+		if (from < 0 || to > lineCount || from > to) {
+			throw new IndexOutOfBoundsException("Lines " + from + " to " + to + " of " + lineCount);
+		}
+	}
+
+	private class LinesView extends AbstractList<String> implements RandomAccess {
+
+		private final int from;
+		private final int to;
+
+		LinesView(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public String get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index " + index + " of " + size());
+			}
+			return getLine(from + index);
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+		@Override
+		public List<String> subList(int fromIndex, int toIndex) {
+			if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+				throw new IndexOutOfBoundsException("Lines " + fromIndex + " to " + toIndex + " of " + size());
+			}
+			return new LinesView(from + fromIndex, from + toIndex);
+		}
+	}
+}
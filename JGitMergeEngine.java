@@ -0,0 +1,35 @@
+package org.eclipse.epsilon.egl;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.merge.MergeAlgorithm;
+import org.eclipse.jgit.merge.MergeResult;
+
+public class JGitMergeEngine implements MergeEngine {
+
+	/**
+	 * Fields that used in this class, the merge algorithm keeps no state
+	 * between merges, so one is shared
+	 */
+
+	private final String name;
+	private final MergeAlgorithm algorithm;
+
+	public JGitMergeEngine (String name, SupportedAlgorithm diff) {
+		this.name = name;
+		this.algorithm = new MergeAlgorithm(DiffAlgorithm.getAlgorithm(diff));
+	}
+
+	@Override
+	public String getName () {
+		return name;
+	}
+
+	@Override
+	public MergeResult<RawText> merge (RawText commonBase, RawText ours, RawText theirs) {
+		// RawTextComparator.WS_IGNORE_ALL,
+		return algorithm.merge(RawTextComparator.DEFAULT, commonBase, ours, theirs);
+	}
+}
@@ -0,0 +1,371 @@
+package org.eclipse.epsilon.egl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+public class LineAlignment {
+
+	/**
+	 * A run of expected lines that were not found, and the actual lines that
+	 * are in their place. No actual lines means the run was deleted, otherwise
+	 * it was modified (replaced by those lines).
+	 */
+
+	public static class Gap {
+
+		private final int expectedFrom;
+		private final int expectedTo;
+		private final int actualFrom;
+		private final int actualTo;
+
+		Gap (int expectedFrom, int expectedTo, int actualFrom, int actualTo) {
+			this.expectedFrom = expectedFrom;
+			this.expectedTo = expectedTo;
+			this.actualFrom = actualFrom;
+			this.actualTo = actualTo;
+		}
+
+		/**
+		 * @return the first missing expected line
+		 */
+
+		public int getExpectedFrom () {
+			return expectedFrom;
+		}
+
+		/**
+		 * @return the line after the last missing expected line
+		 */
+
+		public int getExpectedTo () {
+			return expectedTo;
+		}
+
+		/**
+		 * @return the first actual line in the place of the missing lines
+		 */
+
+		public int getActualFrom () {
+			return actualFrom;
+		}
+
+		public int getActualTo () {
+			return actualTo;
+		}
+
+		public boolean isDeleted () {
+			return actualFrom == actualTo;
+		}
+	}
+
+	/**
+	 * Fields that used in this class, matched holds the actual line of each
+	 * expected line, or -1 if it was not found
+	 */
+
+	// ranges without anchors are aligned with the fewest edits up to this many edits
+	private static final int MAX_EDITS = 128;
+
+	private final long[] expected;
+	private final long[] actual;
+	private final int[] matched;
+	private int matchedCount;
+
+	private LineAlignment (long[] expected, long[] actual) {
+		this.expected = expected;
+		this.actual = actual;
+		this.matched = new int[expected.length];
+		Arrays.fill(matched, -1);
+	}
+
+	/**
+	 * This method finds the expected lines, in order, among the actual lines.
+	 * Common leading and trailing lines are matched first. In between, lines
+	 * whose hash occurs exactly once on both sides are anchors, and the longest
+	 * run of anchors that is in the same order on both sides is kept (patience
+	 * alignment). The ranges between anchors are aligned the same way, and a
+	 * range without anchors is aligned with the fewest edits, or, if it has 
+	 * too many edits for that, filled in order with each expected line taking
+	 * the next actual line with its hash. A duplicated line (a "}" or a blank
+	 * line) so cannot pull the alignment away from the lines around it, and 
+	 * the cost stays near linear in the number of lines.
+	 *
+	 * @param expected, actual line hashes, 0 is never a hash
+	 * @return the alignment
+	 */
+
+	public static LineAlignment align (long[] expected, long[] actual) {
+		LineAlignment alignment = new LineAlignment(expected, actual);
+		// ranges still to align: expected from, expected to, actual from, actual to
+		Deque<int[]> ranges = new ArrayDeque<>();
+		ranges.push(new int[] { 0, expected.length, 0, actual.length });
+		while (!ranges.isEmpty()) {
+			alignment.alignRange(ranges.pop(), ranges);
+		}
+		return alignment;
+	}
+
+	/**
+	 * @return the actual line of each expected line, -1 where it was not found
+	 */
+
+	public int[] getMatched () {
+		return matched;
+	}
+
+	public int getMatchedCount () {
+		return matchedCount;
+	}
+
+	public boolean isComplete () {
+		return matchedCount == expected.length;
+	}
+
+	/**
+	 * @return every run of missing expected lines, in order
+	 */
+
+	public List<Gap> getGaps () {
+		if (isComplete()) {
+			return Collections.emptyList();
+		}
+		List<Gap> gaps = new ArrayList<>();
+		int e = 0;
+		while (e < expected.length) {
+			if (matched[e] >= 0) {
+				++e;
+				continue;
+			}
+			int from = e;
+			while (e < expected.length && matched[e] < 0)
+				++e;
+			// the lines between the matched neighbours are in the place of the missing lines
+			int actualFrom = from > 0 ? matched[from - 1] + 1 : 0;
+			int actualTo = e < expected.length ? matched[e] : actual.length;
+			gaps.add(new Gap(from, e, actualFrom, actualTo));
+		}
+		return gaps;
+	}
+
+	private void match (int e, int a) {
+		matched[e] = a;
+		++matchedCount;
+	}
+
+	private void alignRange (int[] range, Deque<int[]> ranges) {
+		int eFrom = range[0], eTo = range[1], aFrom = range[2], aTo = range[3];
+		while (eFrom < eTo && aFrom < aTo && expected[eFrom] == actual[aFrom])
+			match(eFrom++, aFrom++);
+		while (eFrom < eTo && aFrom < aTo && expected[eTo - 1] == actual[aTo - 1])
+			match(--eTo, --aTo);
+		if (eFrom == eTo || aFrom == aTo)
+			return;
+
+		HashCounts counts = new HashCounts(eTo - eFrom + aTo - aFrom);
+		for (int a = aFrom; a < aTo; ++a)
+			counts.addActual(actual[a], a);
+		for (int e = eFrom; e < eTo; ++e)
+			counts.addExpected(expected[e], e);
+
+		// the unique lines, in expected order, with their actual lines
+		int[] anchorE = new int[eTo - eFrom];
+		int[] anchorA = new int[eTo - eFrom];
+		int anchors = 0;
+		for (int e = eFrom; e < eTo; ++e) {
+			int slot = counts.find(expected[e]);
+			if (counts.expectedCount[slot] == 1 && counts.actualCount[slot] == 1) {
+				anchorE[anchors] = e;
+				anchorA[anchors] = counts.actualFirst[slot];
+				++anchors;
+			}
+		}
+		if (anchors == 0) {
+			if (!fillShortestEdit(eFrom, eTo, aFrom, aTo))
+				fillInOrder(eFrom, eTo, aFrom, aTo, counts);
+			return;
+		}
+
+		// the anchors whose actual lines increase, longest first, split the range
+		int[] kept = increasingSubsequence(anchorA, anchors);
+		int e = eFrom, a = aFrom;
+		for (int k : kept) {
+			if (anchorE[k] > e && anchorA[k] > a)
+				ranges.push(new int[] { e, anchorE[k], a, anchorA[k] });
+			match(anchorE[k], anchorA[k]);
+			e = anchorE[k] + 1;
+			a = anchorA[k] + 1;
+		}
+		if (e < eTo && a < aTo)
+			ranges.push(new int[] { e, eTo, a, aTo });
+	}
+
+	/**
+	 * This method aligns a range with the fewest edits (Myers), which matches 
+	 * duplicated lines to the right places. It costs the size of the range 
+	 * times the number of edits, so it gives up past MAX_EDITS edits.
+	 *
+	 * @return false if the range needs more than MAX_EDITS edits
+	 */
+
+	private boolean fillShortestEdit (int eFrom, int eTo, int aFrom, int aTo) {
+		int n = eTo - eFrom, m = aTo - aFrom;
+		int max = Math.min(n + m, MAX_EDITS);
+		int offset = max + 1;
+		// v[offset + k] is the furthest expected line reached on diagonal k = x - y
+		int[] v = new int[2 * max + 3];
+		List<int[]> trace = new ArrayList<>();
+		for (int d = 0; d <= max; ++d) {
+			for (int k = -d; k <= d; k += 2) {
+				int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]) ? v[offset + k + 1] : v[offset + k - 1] + 1;
+				int y = x - k;
+				while (x < n && y < m && expected[eFrom + x] == actual[aFrom + y]) {
+					++x;
+					++y;
+				}
+				v[offset + k] = x;
+				if (x >= n && y >= m) {
+					trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+					matchEdits(trace, eFrom, aFrom, n, m);
+					return true;
+				}
+			}
+			trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+		}
+		return false;
+	}
+
+	/**
+	 * This method walks the furthest points of every edit count back from 
+	 * the end, and matches the lines on the diagonals between the edits.
+	 */
+
+	private void matchEdits (List<int[]> trace, int eFrom, int aFrom, int x, int y) {
+		for (int d = trace.size() - 1; d > 0; --d) {
+			int[] previous = trace.get(d - 1);
+			int k = x - y;
+			// previous covers diagonals -(d - 1) to d - 1
+			boolean down = k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]);
+			int previousK = down ? k + 1 : k - 1;
+			int previousX = previous[previousK + d - 1];
+			int startX = down ? previousX : previousX + 1;
+			while (x > startX) {
+				--x;
+				--y;
+				match(eFrom + x, aFrom + y);
+			}
+			x = previousX;
+			y = previousX - previousK;
+		}
+		while (x > 0 && y > 0) {
+			--x;
+			--y;
+			match(eFrom + x, aFrom + y);
+		}
+	}
+
+	/**
+	 * Each expected line takes the next actual line with its hash, the actual
+	 * lines of a hash are walked forwards only, so the fill is linear.
+	 */
+
+	private void fillInOrder (int eFrom, int eTo, int aFrom, int aTo, HashCounts counts) {
+		int[] next = new int[aTo - aFrom];
+		Arrays.fill(next, -1);
+		int[] last = new int[counts.keys.length];
+		Arrays.fill(last, -1);
+		for (int a = aFrom; a < aTo; ++a) {
+			int slot = counts.find(actual[a]);
+			if (last[slot] >= 0)
+				next[last[slot] - aFrom] = a;
+			last[slot] = a;
+		}
+		int cursor = aFrom;
+		for (int e = eFrom; e < eTo; ++e) {
+			int slot = counts.find(expected[e]);
+			int a = counts.actualFirst[slot];
+			while (a >= 0 && a < cursor)
+				a = next[a - aFrom];
+			counts.actualFirst[slot] = a;
+			if (a >= 0) {
+				match(e, a);
+				cursor = a + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return the indexes of a longest strictly increasing subsequence of values[0..count)
+	 */
+
+	static int[] increasingSubsequence (int[] values, int count) {
+		int[] tails = new int[count];
+		int[] previous = new int[count];
+		int length = 0;
+		for (int i = 0; i < count; ++i) {
+			int low = 0, high = length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (values[tails[mid]] < values[i])
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			previous[i] = low > 0 ? tails[low - 1] : -1;
+			tails[low] = i;
+			if (low == length)
+				++length;
+		}
+		int[] kept = new int[length];
+		for (int i = length - 1, k = length > 0 ? tails[length - 1] : -1; i >= 0; --i, k = previous[k])
+			kept[i] = k;
+		return kept;
+	}
+
+	/**
+	 * Open addressing table from hash to how often it occurs on each side,
+	 * and its first actual line. Hashes are never 0, so 0 marks a free slot.
+	 */
+
+	private static class HashCounts {
+
+		final long[] keys;
+		final int shift;
+		final int[] expectedCount;
+		final int[] actualCount;
+		final int[] actualFirst;
+
+		HashCounts (int size) {
+			int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+			keys = new long[capacity];
+			shift = 64 - Integer.numberOfTrailingZeros(capacity);
+			expectedCount = new int[capacity];
+			actualCount = new int[capacity];
+			actualFirst = new int[capacity];
+			Arrays.fill(actualFirst, -1);
+		}
+
+		int find (long hash) {
+			int mask = keys.length - 1;
+			// Fibonacci hashing, the top bits of the product pick the slot
+			int slot = (int) (hash * 0x9e3779b97f4a7c15L >>> shift);
+			while (keys[slot] != 0 && keys[slot] != hash)
+				slot = slot + 1 & mask;
+			keys[slot] = hash;
+			return slot;
+		}
+
+		void addActual (long hash, int a) {
+			int slot = find(hash);
+			if (actualCount[slot]++ == 0)
+				actualFirst[slot] = a;
+		}
+
+		void addExpected (long hash, int e) {
+			++expectedCount[find(hash)];
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package org.eclipse.epsilon.egl;
+
+public class LineHashes {
+
+	/**
+	 * Line hashes are 4 Base64 characters. Packing the characters into an int
+	 * keeps them exactly, so packed hashes compare the same way the Strings did,
+	 * and no line hash packs to 0.
+	 */
+
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private static final long SEED = 0x27d4eb2f165667c5L;
+	private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+	private LineHashes () {
+	}
+
+	/**
+	 * This method hashes a line as OutputBuffer.hashLine does, returning the packed 
+	 * hash, without making the hash String. UnitTests checks that both agree.
+	 *
+	 * @param line
+	 * @return the packed hash of the line
+	 */
+
+	public static int hashLine (String line) {
+		return encode(line.hashCode());
+	}
+
+	/**
+	 * This method hashes the characters from (inclusive) to (exclusive) as hashLine
+	 * hashes them as a String, without making the String.
+	 */
+
+	public static int hashLine (CharSequence text, int from, int to) {
+		// String.hashCode over the range
+		int code = 0;
+		for (int i = from; i < to; ++i)
+			code = 31 * code + text.charAt(i);
+		return encode(code);
+	}
+
+	/**
+	 * This method is a fast non-cryptographic 64 bit hash of the characters
+	 * from (inclusive) to (exclusive). Two characters are folded in per
+	 * multiplication and the result is avalanched, so every bit of the hash
+	 * depends on every character. It never returns 0.
+	 */
+
+	public static long hash64 (CharSequence text, int from, int to) {
+		long h = SEED ^ (to - from);
+		int i = from;
+		for (; i + 1 < to; i += 2)
+			h = (h ^ (text.charAt(i) << 16 | text.charAt(i + 1))) * MULTIPLIER;
+		if (i < to)
+			h = (h ^ text.charAt(i)) * MULTIPLIER;
+		return avalanche(h);
+	}
+
+	public static long hash64 (byte[] bytes, int from, int to) {
+		long h = SEED ^ (to - from);
+		for (int i = from; i < to; ++i)
+			h = (h ^ (bytes[i] & 0xFF)) * MULTIPLIER;
+		return avalanche(h);
+	}
+
+	/**
+	 * The MurmurHash3 finalizer, with 0 moved to 1 so 0 can mark a missing hash
+	 */
+
+	private static long avalanche (long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+
+	public static int pack (CharSequence hash) {
+		return pack(hash, 0, hash.length());
+	}
+
+	/**
+	 * @return the characters from (inclusive) to (exclusive), at most 4, packed into an int
+	 */
+
+	public static int pack (CharSequence hash, int from, int to) {
+		int packed = 0;
+		for (int i = from; i < to && i < from + 4; ++i)
+			packed = packed << 8 | (hash.charAt(i) & 0xFF);
+		return packed << 8 * (4 - Math.min(to - from, 4));
+	}
+
+	public static String unpack (int packed) {
+		StringBuilder hash = new StringBuilder(4);
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			char ch = (char) ((packed >>> shift) & 0xFF);
+			if (ch == 0)
+				break;
+			hash.append(ch);
+		}
+		return hash.toString();
+	}
+
+	/**
+	 * This method cuts a hash line into its 4 characters hashes and packs them.
+	 * An empty hash line gives one empty hash, which no line matches.
+	 *
+	 * @param hashLine
+	 * @return the packed hashes, in line order
+	 */
+
+	public static int[] decode (String hashLine) {
+		if (hashLine.isEmpty())
+			return new int[1];
+		int[] hashes = new int[(hashLine.length() + 3) / 4];
+		for (int h = 0; h < hashes.length; ++h)
+			hashes[h] = pack(hashLine, 4 * h, Math.min(4 * h + 4, hashLine.length()));
+		return hashes;
+	}
+
+	/**
+	 * The hash of a line is the Base64 of the shortest two's complement bytes of
+	 * its String hash code, cut to 4 characters, i.e. the first 3 bytes at most.
+	 */
+
+	private static int encode (int code) {
+		int bytes = code >= -0x80 && code < 0x80 ? 1
+			: code >= -0x8000 && code < 0x8000 ? 2
+			: code >= -0x800000 && code < 0x800000 ? 3 : 4;
+		int value = bytes == 4 ? code >>> 8 : code & (0xFFFFFF >>> 8 * (3 - bytes));
+		int used = Math.min(bytes, 3);
+		// left align the used bytes in 24 bits
+		int bits = value << 8 * (3 - used);
+		int packed = 0;
+		for (int c = 0; c < 4; ++c) {
+			char ch = c <= used ? BASE64[(bits >>> (18 - 6 * c)) & 0x3F] : '=';
+			packed = packed << 8 | ch;
+		}
+		return packed;
+	}
+}
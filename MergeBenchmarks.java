@@ -0,0 +1,137 @@
+package org.eclipse.epsilon.egl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * JMH benchmarks of each step of the merge: reading the hash trailer, finding
+ * the original content, checking the original lines, stripping the regions,
+ * the 3-way merge with each merge engine, and DoMergingAndConflicts end to end. 
+ * The inputs come from a seeded CorpusGenerator, for each file size, region 
+ * density and TestStrategy scenario, so runs of different releases can be compared.
+ *
+ * Usage, with jmh-core and its annotation processor on the classpath:
+ *   java org.openjdk.jmh.Main MergeBenchmarks [-p lines=5000 -p scenario=OneConflict -p engine=diff3]
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MergeBenchmarks {
+
+	/**
+	 * The merge engine of the engine benchmark, so only that benchmark is run 
+	 * once per engine
+	 */
+
+	@State(Scope.Benchmark)
+	public static class Engine {
+
+		@Param({ "histogram", "myers", "diff3" })
+		public String engine;
+
+		private MergeEngine mergeEngine;
+
+		@Setup(Level.Trial)
+		public void setUp () {
+			mergeEngine = MergeEngine.forName(engine);
+		}
+	}
+
+	/**
+	 * The parameters, the lines of the generated file, the chance that a
+	 * generated method is followed by a protected region, and the edit scenario
+	 */
+
+	@Param({ "500", "5000", "50000" })
+	public int lines;
+
+	@Param({ "0", "0.01", "0.05" })
+	public double regionDensity;
+
+	@Param({ "OneLineAdded", "MultipleLinesAdded", "OneLineModified", "OneLineDeleted", "OneConflict", "MultipleConflict" })
+	public String scenario;
+
+	/**
+	 * Fields that used in this class, the inputs of every step
+	 */
+
+	private static final long SEED = 20221225L;
+
+	private String existingContents;
+	private String newContents;
+	private String existingBody;
+	private String original;
+	private String ours;
+	private String theirs;
+
+	@Setup(Level.Trial)
+	public void setUp () {
+		CorpusGenerator corpus = new CorpusGenerator(SEED).files(1).lines(lines).protectedRegionDensity(regionDensity);
+		CorpusGenerator.Case c = corpus.scenario(0, TestStrategy.valueOf(scenario));
+		existingContents = c.getExistingContents();
+		newContents = c.getNewContents();
+
+		// the merge inputs, as MergeSession makes them
+		HashedDoc existingDoc = new HashedDoc(existingContents);
+		existingBody = existingDoc.getBody();
+		original = existingDoc.originalContent();
+		ours = RegionIndex.strip(new HashedDoc(newContents).getBody()).getContent();
+		theirs = RegionIndex.strip(existingBody).getContent();
+	}
+
+	@Benchmark
+	public HashedDoc hashedDoc () {
+		return new HashedDoc(existingContents);
+	}
+
+	/**
+	 * A HashedDoc matches its lines once, so each call reads the trailer again
+	 */
+
+	@Benchmark
+	public String originalContent () {
+		return new HashedDoc(existingContents).originalContent();
+	}
+
+	@Benchmark
+	public boolean allOriginalLinesPresent () {
+		return new HashedDoc(existingContents).allOriginalLinesPresent();
+	}
+
+	@Benchmark
+	public RegionIndex stripRegions () {
+		return RegionIndex.strip(existingBody);
+	}
+
+	@Benchmark
+	public StructuredMergeResult merge () {
+		return new MergeTester2().mergeStructured(original, ours, theirs);
+	}
+
+	@Benchmark
+	public StructuredMergeResult mergeWithEngine (Engine engine) {
+		return new MergeTester2(engine.mergeEngine).mergeStructured(original, ours, theirs);
+	}
+
+	@Benchmark
+	public MergingAndConflicts doMergingAndConflicts () throws IOException {
+		return MergingAndConflicts.DoMergingAndConflicts(existingContents, newContents);
+	}
+}
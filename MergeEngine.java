@@ -0,0 +1,100 @@
+package org.eclipse.epsilon.egl;
+
+import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.merge.MergeResult;
+
+public interface MergeEngine {
+
+	/**
+	 * The system property naming the engine used by default: myers, histogram or diff3
+	 */
+
+	String ENGINE_PROPERTY = "egl.mergeEngine";
+
+	/**
+	 * The system properties naming the engine used for files larger than a
+	 * number of bytes, and that number
+	 */
+
+	String LARGE_ENGINE_PROPERTY = "egl.mergeEngine.large";
+	String THRESHOLD_PROPERTY = "egl.mergeEngine.threshold";
+
+	MergeEngine MYERS = new JGitMergeEngine("myers", SupportedAlgorithm.MYERS);
+	MergeEngine HISTOGRAM = new JGitMergeEngine("histogram", SupportedAlgorithm.HISTOGRAM);
+	MergeEngine DIFF3 = new Diff3MergeEngine();
+
+	String getName ();
+
+	/**
+	 * This method merges ours and theirs, both changed from commonBase.
+	 *
+	 * @param commonBase, ours, theirs
+	 * @return the merge result, its sequences are commonBase, ours and theirs in that order
+	 */
+
+	MergeResult<RawText> merge (RawText commonBase, RawText ours, RawText theirs);
+
+	/**
+	 * @return the engine with that name, null if there is none
+	 */
+
+	static MergeEngine forName (String name) {
+		for (MergeEngine engine : new MergeEngine[] { MYERS, HISTOGRAM, DIFF3 }) {
+			if (engine.getName().equalsIgnoreCase(name.trim()))
+				return engine;
+		}
+		return null;
+	}
+
+	/**
+	 * This method reads the engine for this run from the system properties.
+	 * Without them it is JGit's histogram merge, which MergeTester2 always used.
+	 * When a large file engine and a threshold are set, files above the
+	 * threshold are merged with the large file engine.
+	 *
+	 * @return the engine for this run
+	 */
+
+	static MergeEngine getDefault () {
+		MergeEngine engine = named(System.getProperty(ENGINE_PROPERTY), HISTOGRAM);
+		MergeEngine large = named(System.getProperty(LARGE_ENGINE_PROPERTY), null);
+		String threshold = System.getProperty(THRESHOLD_PROPERTY);
+		if (large == null || threshold == null) {
+			return engine;
+		}
+		try {
+			return bySize(engine, large, Long.parseLong(threshold.trim()));
+		} catch (NumberFormatException e) {
+			return engine;
+		}
+	}
+
+	/**
+	 * @return an engine that merges with small when the largest input has at most
+	 * threshold bytes, and with large otherwise
+	 */
+
+	static MergeEngine bySize (MergeEngine small, MergeEngine large, long threshold) {
+		return new MergeEngine() {
+			@Override
+			public String getName () {
+				return small.getName() + "<=" + threshold + "<" + large.getName();
+			}
+
+			@Override
+			public MergeResult<RawText> merge (RawText commonBase, RawText ours, RawText theirs) {
+				long size = Math.max(commonBase.getRawContent().length,
+					Math.max(ours.getRawContent().length, theirs.getRawContent().length));
+				return (size <= threshold ? small : large).merge(commonBase, ours, theirs);
+			}
+		};
+	}
+
+	static MergeEngine named (String name, MergeEngine otherwise) {
+		if (name == null || name.trim().isEmpty())
+			return otherwise;
+		MergeEngine engine = forName(name);
+		return engine == null ? otherwise : engine;
+	}
+}
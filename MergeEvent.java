@@ -0,0 +1,103 @@
+package org.eclipse.epsilon.egl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import org.eclipse.epsilon.egl.MergeListener.Phase;
+
+/*
+ * The Flight Recorder event of one merge, with the time of each phase. A
+ * session only fills it while a recording has it enabled.
+ */
+
+@Name("org.eclipse.epsilon.egl.Merge")
+@Label("EGL Merge")
+@Category({ "EGL", "Merge" })
+@Description("A merge of the template output into an existing generated file")
+class MergeEvent extends Event {
+
+	@Label("Target")
+	String target;
+
+	@Label("Status")
+	String status;
+
+	@Label("Merge Path")
+	String mergePath;
+
+	@Label("Existing Lines")
+	@Description("Lines of the existing file, without regions")
+	int existingLines;
+
+	@Label("New Lines")
+	@Description("Lines of the template output, without regions")
+	int newLines;
+
+	@Label("Original Lines")
+	@Description("Lines the trailer of the existing file has hashes for")
+	int originalLines;
+
+	@Label("Trailer Parsing")
+	@Timespan(Timespan.NANOSECONDS)
+	long trailerParsing;
+
+	@Label("Hashing")
+	@Timespan(Timespan.NANOSECONDS)
+	long hashing;
+
+	@Label("Region Stripping")
+	@Timespan(Timespan.NANOSECONDS)
+	long regionStripping;
+
+	@Label("Base Reconstruction")
+	@Timespan(Timespan.NANOSECONDS)
+	long baseReconstruction;
+
+	@Label("Merge")
+	@Timespan(Timespan.NANOSECONDS)
+	long merge;
+
+	@Label("Region Restoring")
+	@Timespan(Timespan.NANOSECONDS)
+	long regionRestoring;
+
+	@Label("Trailer Writing")
+	@Timespan(Timespan.NANOSECONDS)
+	long trailerWriting;
+
+	/**
+	 * Phases that run more than once in a merge, like parsing both trailers, add up
+	 */
+
+	void addPhase (Phase phase, long nanos) {
+		switch (phase) {
+		case TrailerParsing:
+			trailerParsing += nanos;
+			break;
+		case Hashing:
+			hashing += nanos;
+			break;
+		case RegionStripping:
+			regionStripping += nanos;
+			break;
+		case BaseReconstruction:
+			baseReconstruction += nanos;
+			break;
+		case Merge:
+			merge += nanos;
+			break;
+		case RegionRestoring:
+			regionRestoring += nanos;
+			break;
+		case TrailerWriting:
+			trailerWriting += nanos;
+			break;
+		default:
+			break;
+		}
+	}
+}
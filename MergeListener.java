@@ -0,0 +1,97 @@
+package org.eclipse.epsilon.egl;
+
+/*
+ * Receives the timings of a merge, phase by phase, for each file. A session
+ * only reads the clock when its listener is not NONE, so without a listener
+ * the merge costs the same as before.
+ */
+
+public interface MergeListener {
+
+	/**
+	 * The phases of a merge, in the order they run
+	 */
+
+	enum Phase {
+		Read,               // reading the existing target
+		TrailerParsing,     // reading the hash trailers of the existing and new contents
+		Hashing,            // hashing the existing lines and aligning them with the trailer
+		RegionStripping,    // removing the regions of the existing and new contents
+		BaseReconstruction, // rebuilding the original content from the aligned lines
+		Merge,              // the 3-way merge of the original, new and existing contents
+		RegionRestoring,    // putting the regions back into the merged content
+		TrailerWriting,     // hashing the original content into the new trailer
+		Write,              // writing the result to the target
+	}
+
+	/**
+	 * The listener that does nothing, the default
+	 */
+
+	MergeListener NONE = new MergeListener() {
+	};
+
+	/**
+	 * This method is called after each phase of a file.
+	 *
+	 * @param target the file being merged, or null if the merge was not given one
+	 * @param phase
+	 * @param nanos how long the phase took
+	 * @param bytes the chars the phase read, or the bytes it read or wrote for Read and Write
+	 * @param lines the lines the phase worked on, or -1 where the phase does not count them
+	 */
+
+	default void phase (String target, Phase phase, long nanos, long bytes, int lines) {
+	}
+
+	/**
+	 * This method is called once a file is merged, whatever its status.
+	 *
+	 * @param target the file being merged, or null if the merge was not given one
+	 * @param result
+	 * @param nanos how long the whole merge took
+	 */
+
+	default void merged (String target, MergingAndConflicts result, long nanos) {
+	}
+
+	/**
+	 * This method is called when a target is left as it is, because the
+	 * template output and the target did not change.
+	 *
+	 * @param target
+	 */
+
+	default void unchanged (String target) {
+	}
+
+	/**
+	 * @return a listener that passes every call to first and then to second
+	 */
+
+	static MergeListener both (MergeListener first, MergeListener second) {
+		if (first == NONE)
+			return second;
+		if (second == NONE)
+			return first;
+		return new MergeListener() {
+			@Override
+			public void phase (String target, Phase phase, long nanos, long bytes, int lines) {
+				first.phase(target, phase, nanos, bytes, lines);
+				second.phase(target, phase, nanos, bytes, lines);
+			}
+
+			@Override
+			public void merged (String target, MergingAndConflicts result, long nanos) {
+				first.merged(target, result, nanos);
+				second.merged(target, result, nanos);
+			}
+
+			@Override
+			public void unchanged (String target) {
+				first.unchanged(target);
+				second.unchanged(target);
+			}
+		};
+	}
+}
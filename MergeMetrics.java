@@ -0,0 +1,278 @@
+package org.eclipse.epsilon.egl;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.epsilon.egl.MergingAndConflicts.MergePath;
+
+/*
+ * A merge listener that keeps running totals in LongAdders, so concurrent
+ * merges update them without contending, and exposes them as an MXBean. 
+ * Register it once from code, or with -Degl.mergeMetrics=true, which the
+ * generator and the batch merger check when they start:
+ *
+ *   MergeMetrics.register();
+ */
+
+public class MergeMetrics implements MergeListener, MergeMetricsMXBean {
+
+	/**
+	 * The system property that registers the metrics when a generator or a batch merger starts
+	 */
+
+	public static final String METRICS_PROPERTY = "egl.mergeMetrics";
+
+	public static final String OBJECT_NAME = "org.eclipse.epsilon.egl:type=MergeMetrics";
+
+	/**
+	 * The upper bounds of the latency buckets in microseconds, a last bucket
+	 * takes the slower merges
+	 */
+
+	private static final long[] BOUNDS = { 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+		100_000, 250_000, 500_000, 1_000_000, Long.MAX_VALUE };
+
+	private static MergeMetrics registered;
+
+	// set once the system property was read, after registered
+	private static volatile boolean requestChecked;
+
+	/**
+	 * Fields that used in this class
+	 */
+
+	private final LongAdder filesWritten = new LongAdder();
+	private final LongAdder filesUnchanged = new LongAdder();
+	private final LongAdder filesMerged = new LongAdder();
+	private final LongAdder filesConflicted = new LongAdder();
+	private final LongAdder filesOriginalModified = new LongAdder();
+	private final LongAdder filesConflictsResolved = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder fullMerges = new LongAdder();
+	private final LongAdder existingUnchangedHits = new LongAdder();
+	private final LongAdder templateUnchangedHits = new LongAdder();
+	private final LongAdder mergeCount = new LongAdder();
+	private final LongAdder mergeNanos = new LongAdder();
+	private final LongAdder[] latencies = new LongAdder[BOUNDS.length];
+
+	public MergeMetrics () {
+		for (int b = 0; b < latencies.length; ++b)
+			latencies[b] = new LongAdder();
+	}
+
+	/**
+	 * This method registers the metrics with the platform MBean server, and 
+	 * adds them to the default listener of the merge sessions. Only the first 
+	 * call registers them. If the MBean cannot be registered, the failure is 
+	 * reported and the metrics are still counted.
+	 *
+	 * @return the registered metrics
+	 */
+
+	public static synchronized MergeMetrics register () {
+		if (registered == null) {
+			MergeMetrics metrics = new MergeMetrics();
+			metrics.registerMBean(ManagementFactory.getPlatformMBeanServer());
+			MergeSession.setDefaultListener(MergeListener.both(MergeSession.getDefaultListener(), metrics));
+			registered = metrics;
+		}
+		return registered;
+	}
+
+	/**
+	 * This method registers the metrics as OBJECT_NAME with the server. A failure 
+	 * is reported and not thrown, so it never stops the generator or the batch 
+	 * merger that asked for the metrics.
+	 *
+	 * @return true if the metrics were registered
+	 */
+
+	boolean registerMBean (MBeanServer server) {
+		try {
+			server.registerMBean(this, new ObjectName(OBJECT_NAME));
+			return true;
+		} catch (JMException e) {
+			System.err.println("The merge metrics could not be registered as " + OBJECT_NAME + ": " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * This method registers the metrics if the METRICS_PROPERTY system property
+	 * is true. The property is read by the first call only, the later ones 
+	 * return at once, so a generator can call it for every template.
+	 *
+	 * @return the registered metrics, or null if they were not registered
+	 */
+
+	public static MergeMetrics registerIfRequested () {
+		if (!requestChecked) {
+			synchronized (MergeMetrics.class) {
+				if (!requestChecked) {
+					if (Boolean.getBoolean(METRICS_PROPERTY))
+						register();
+					requestChecked = true;
+				}
+			}
+		}
+		return registered;
+	}
+
+	@Override
+	public void phase (String target, Phase phase, long nanos, long bytes, int lines) {
+		if (phase == Phase.Read) {
+			bytesRead.add(bytes);
+		} else if (phase == Phase.Write) {
+			filesWritten.increment();
+			bytesWritten.add(bytes);
+		}
+	}
+
+	@Override
+	public void merged (String target, MergingAndConflicts result, long nanos) {
+		mergeCount.increment();
+		mergeNanos.add(nanos);
+		long micros = nanos / 1000;
+		int b = 0;
+		while (micros > BOUNDS[b])
+			++b;
+		latencies[b].increment();
+
+		switch (result.getStatus()) {
+		case MergedSuccessfully:
+			filesMerged.increment();
+			if (result.getMergePath() == MergePath.ExistingUnchanged)
+				existingUnchangedHits.increment();
+			else if (result.getMergePath() == MergePath.TemplateUnchanged)
+				templateUnchangedHits.increment();
+			else
+				fullMerges.increment();
+			break;
+		case ConflictsFound:
+			filesConflicted.increment();
+			break;
+		case OriginalWasModified:
+			filesOriginalModified.increment();
+			break;
+		case ConflictsResolved:
+			filesConflictsResolved.increment();
+			break;
+		default:
+			break;
+		}
+	}
+
+	@Override
+	public void unchanged (String target) {
+		filesUnchanged.increment();
+	}
+
+	@Override
+	public long getFilesWritten () {
+		return filesWritten.sum();
+	}
+
+	@Override
+	public long getFilesUnchanged () {
+		return filesUnchanged.sum();
+	}
+
+	@Override
+	public long getFilesMerged () {
+		return filesMerged.sum();
+	}
+
+	@Override
+	public long getFilesConflicted () {
+		return filesConflicted.sum();
+	}
+
+	@Override
+	public long getFilesOriginalModified () {
+		return filesOriginalModified.sum();
+	}
+
+	@Override
+	public long getFilesConflictsResolved () {
+		return filesConflictsResolved.sum();
+	}
+
+	@Override
+	public long getBytesRead () {
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getBytesWritten () {
+		return bytesWritten.sum();
+	}
+
+	@Override
+	public long getFullMerges () {
+		return fullMerges.sum();
+	}
+
+	@Override
+	public long getExistingUnchangedHits () {
+		return existingUnchangedHits.sum();
+	}
+
+	@Override
+	public long getTemplateUnchangedHits () {
+		return templateUnchangedHits.sum();
+	}
+
+	/**
+	 * @return the share of successful merges that took a fast path, 0 before any
+	 */
+
+	@Override
+	public double getFastPathHitRate () {
+		long hits = existingUnchangedHits.sum() + templateUnchangedHits.sum();
+		long merges = hits + fullMerges.sum();
+		return merges == 0 ? 0 : (double) hits / merges;
+	}
+
+	@Override
+	public long getMergeCount () {
+		return mergeCount.sum();
+	}
+
+	@Override
+	public double getMeanMergeMicros () {
+		long merges = mergeCount.sum();
+		return merges == 0 ? 0 : mergeNanos.sum() / 1000.0 / merges;
+	}
+
+	@Override
+	public long[] getMergeLatencyBoundsMicros () {
+		return BOUNDS.clone();
+	}
+
+	@Override
+	public long[] getMergeLatencyCounts () {
+		long[] counts = new long[latencies.length];
+		for (int b = 0; b < counts.length; ++b)
+			counts[b] = latencies[b].sum();
+		return counts;
+	}
+
+	/**
+	 * Counts updated while resetting may be kept or lost, as LongAdder.reset allows
+	 */
+
+	@Override
+	public void reset () {
+		for (LongAdder adder : new LongAdder[] { filesWritten, filesUnchanged, filesMerged, filesConflicted,
+				filesOriginalModified, filesConflictsResolved, bytesRead, bytesWritten, fullMerges,
+				existingUnchangedHits, templateUnchangedHits, mergeCount, mergeNanos })
+			adder.reset();
+		for (LongAdder adder : latencies)
+			adder.reset();
+	}
+}
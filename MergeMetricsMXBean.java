@@ -0,0 +1,61 @@
+package org.eclipse.epsilon.egl;
+
+/*
+ * The running totals of the generation and merges of this JVM, as shown by
+ * JConsole or a JMX exporter under MergeMetrics.OBJECT_NAME.
+ */
+
+public interface MergeMetricsMXBean {
+
+	/**
+	 * The files written, left unchanged, and merged with each status
+	 */
+
+	long getFilesWritten ();
+
+	long getFilesUnchanged ();
+
+	long getFilesMerged ();
+
+	long getFilesConflicted ();
+
+	long getFilesOriginalModified ();
+
+	long getFilesConflictsResolved ();
+
+	/**
+	 * The bytes of the existing targets read, and of the targets written
+	 */
+
+	long getBytesRead ();
+
+	long getBytesWritten ();
+
+	/**
+	 * The successful merges by path, and the share of them a fast path took
+	 */
+
+	long getFullMerges ();
+
+	long getExistingUnchangedHits ();
+
+	long getTemplateUnchangedHits ();
+
+	double getFastPathHitRate ();
+
+	/**
+	 * The merges of any status and their latency: the upper bound of each
+	 * histogram bucket in microseconds, the last one unbounded, and the merges
+	 * in each bucket
+	 */
+
+	long getMergeCount ();
+
+	double getMeanMergeMicros ();
+
+	long[] getMergeLatencyBoundsMicros ();
+
+	long[] getMergeLatencyCounts ();
+
+	void reset ();
+}
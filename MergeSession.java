@@ -0,0 +1,361 @@
+package org.eclipse.epsilon.egl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.epsilon.egl.MergeListener.Phase;
+import org.eclipse.epsilon.egl.MergingAndConflicts.MergePath;
+import org.eclipse.epsilon.egl.MergingAndConflicts.StatusCode;
+import org.eclipse.epsilon.egl.RegionIndex.RegionSlice;
+
+public class MergeSession {
+
+	/**
+	 * The listener sessions are made with, NONE unless one is set
+	 */
+
+	private static volatile MergeListener defaultListener = MergeListener.NONE;
+
+	/**
+	 * Fields that used in this class to keep the parsed state of one merge,
+	 * every document is parsed, stripped and hash-aligned at most once.
+	 */
+
+	private final String existingContents;
+	private final String newContents;
+	private final MergeEngine engine;
+	private MergeListener listener = defaultListener;
+	private String target;
+	private boolean fastPaths = true;
+	private MergeEvent event;
+	private HashedDoc existingDoc;
+	private HashedDoc newDoc;
+	private String originalDoc;
+	private int[] baseLines;
+	private RegionIndex existingRegions;
+	private RegionIndex newRegions;
+	private MergingAndConflicts checked;
+
+	/**
+	 * @param existingContents the contents in the disk
+	 */
+
+	public MergeSession (String existingContents) {
+		this(existingContents, null);
+	}
+
+	/**
+	 * @param existingContents the contents in the disk
+	 * @param newContents the contents that comes from the transformation
+	 */
+
+	public MergeSession (String existingContents, String newContents) {
+		this(existingContents, newContents, MergeEngine.getDefault());
+	}
+
+	/**
+	 * @param engine the 3-way merge used when no fast path applies
+	 */
+
+	public MergeSession (String existingContents, String newContents, MergeEngine engine) {
+		this.existingContents = existingContents;
+		this.newContents = newContents;
+		this.engine = engine;
+	}
+
+	public static MergeListener getDefaultListener () {
+		return defaultListener;
+	}
+
+	/**
+	 * @param listener the listener of every session made after this, null for none
+	 */
+
+	public static void setDefaultListener (MergeListener listener) {
+		defaultListener = listener == null ? MergeListener.NONE : listener;
+	}
+
+	public MergeListener getListener () {
+		return listener;
+	}
+
+	public void setListener (MergeListener listener) {
+		this.listener = listener == null ? MergeListener.NONE : listener;
+	}
+
+	/**
+	 * @return the name of the file being merged, given to the listener
+	 */
+
+	public String getTarget () {
+		return target;
+	}
+
+	public void setTarget (String target) {
+		this.target = target;
+	}
+
+	/**
+	 * @param fastPaths false to always run the 3-way merge, so the fast paths 
+	 * can be compared with it
+	 */
+
+	void setFastPaths (boolean fastPaths) {
+		this.fastPaths = fastPaths;
+	}
+
+	public String getExistingContents () {
+		return existingContents;
+	}
+
+	public String getNewContents () {
+		return newContents;
+	}
+
+	public HashedDoc getExistingDoc () {
+		if (existingDoc == null) {
+			long start = now();
+			existingDoc = new HashedDoc(existingContents);
+			timed(Phase.TrailerParsing, start, existingContents.length(), existingDoc.getTrailer().size());
+		}
+		return existingDoc;
+	}
+
+	public HashedDoc getNewDoc () {
+		if (newDoc == null) {
+			long start = now();
+			newDoc = new HashedDoc(newContents);
+			timed(Phase.TrailerParsing, start, newContents.length(), newDoc.getTrailer().size());
+		}
+		return newDoc;
+	}
+
+	public RegionIndex getExistingRegions () {
+		if (existingRegions == null) {
+			String body = getExistingDoc().getBody();
+			long start = now();
+			existingRegions = RegionIndex.strip(body);
+			timed(Phase.RegionStripping, start, body.length(), existingRegions.getLineCount());
+		}
+		return existingRegions;
+	}
+
+	public RegionIndex getNewRegions () {
+		if (newRegions == null) {
+			String body = getNewDoc().getBody();
+			long start = now();
+			newRegions = RegionIndex.strip(body);
+			timed(Phase.RegionStripping, start, body.length(), newRegions.getLineCount());
+		}
+		return newRegions;
+	}
+
+	/**
+	 * @return the original generated content of the existing file, without regions,
+	 * where lines with the same hash are told apart by the template, see HashedDoc.baseLines
+	 */
+
+	public String getOriginalContent () {
+		if (originalDoc == null) {
+			HashedDoc doc = getExistingDoc();
+			RegionIndex newIndex = getNewRegions();
+			long start = now();
+			baseLines = doc.baseLines(newIndex.getContent());
+			originalDoc = doc.originalContent(baseLines);
+			timed(Phase.BaseReconstruction, start, originalDoc.length(), doc.getOriginalLineCount());
+		}
+		return originalDoc;
+	}
+
+	/**
+	 * This method checks for various states the existing content may be in,
+	 * see MergingAndConflicts.CheckContents. The result is kept, so checking
+	 * again or merging afterwards does not repeat the work.
+	 *
+	 * @return a MergingAndConflicts object containing a status and two types of content.
+	 */
+
+	public MergingAndConflicts check () {
+		if (checked == null)
+			checked = doCheck();
+		return checked;
+	}
+
+	private MergingAndConflicts doCheck () {
+		// check if the trailer at the buttom is followed by the conflicted marker
+		HashTrailer trailer = getExistingDoc().getHashTrailer();
+		if (trailer != null && trailer.isConflicted()) {
+			// remove the last lane = conflicted
+			String contents = HashedDoc.removeEndLines(existingContents, 1);
+			return new MergingAndConflicts(StatusCode.ConflictsResolved, contents, "");
+		}
+
+		// check if any of the original lines was modified.
+		HashedDoc doc = getExistingDoc();
+		long start = now();
+		boolean allPresent = doc.allOriginalLinesPresent();
+		timed(Phase.Hashing, start, doc.getBody().length(), doc.getCleanLineCount());
+		if (!allPresent) {
+			return new MergingAndConflicts(doc.missingOriginalLines());
+		}
+
+		return new MergingAndConflicts(StatusCode.NotYetMerged, existingContents, "");
+	}
+
+	/**
+	 * This method merges the new contents into the existing contents,
+	 * see MergingAndConflicts.DoMergingAndConflicts. The existing document
+	 * parsed by the check is reused for the base reconstruction and the merge.
+	 *
+	 * @return a MergingAndConflicts object containing a status and different types of content.
+	 */
+
+	public MergingAndConflicts merge () {
+		// the event is only kept while a recording has it enabled
+		MergeEvent recorded = new MergeEvent();
+		if (recorded.isEnabled()) {
+			event = recorded;
+			event.begin();
+		}
+		long start = now();
+		MergingAndConflicts result = doMerge();
+		if (listener != MergeListener.NONE) {
+			listener.merged(target, result, System.nanoTime() - start);
+		}
+		if (event != null) {
+			commit(result);
+		}
+		return result;
+	}
+
+	private void commit (MergingAndConflicts result) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.target = target;
+			event.status = result.getStatus().name();
+			event.mergePath = result.getMergePath() == null ? null : result.getMergePath().name();
+			event.existingLines = existingRegions == null ? 0 : existingRegions.getLineCount();
+			event.newLines = newRegions == null ? 0 : newRegions.getLineCount();
+			event.originalLines = existingDoc == null ? 0 : existingDoc.getOriginalLineCount();
+			event.commit();
+		}
+		event = null;
+	}
+
+	private MergingAndConflicts doMerge () {
+
+		// not merge if there is a conflicts or the orginal was modified..
+		if (check().getStatus() != StatusCode.NotYetMerged) {
+			return check();
+		}
+
+		String original = getOriginalContent();
+
+		// remove regions to not merge their content..
+		RegionIndex newIndex = getNewRegions();
+		RegionIndex existingIndex = getExistingRegions();
+
+		// when one side is still the original, the merge result is the other side
+		MergePath fastPath = fastPath(original, newIndex, existingIndex);
+		if (fastPath != MergePath.FullMerge) {
+			RegionIndex changed = fastPath == MergePath.ExistingUnchanged ? newIndex : existingIndex;
+			List<RegionSlice> slices = new ArrayList<>();
+			String merged = restore(changed.getContent(), existingIndex, newIndex, slices);
+			merged = appendTrailer(merged, original);
+			return new MergingAndConflicts(merged, fastPath, () -> getExistingDoc().addedLines(baseLines), slices);
+		}
+
+		// merge the contents
+		long start = now();
+		StructuredMergeResult result = new MergeTester2(engine).mergeStructured(original, newIndex.getContent(), existingIndex.getContent());
+		timed(Phase.Merge, start, original.length() + newIndex.getContent().length() + existingIndex.getContent().length(),
+			getExistingDoc().getOriginalLineCount() + newIndex.getLineCount() + existingIndex.getLineCount());
+
+		// if conflicts found ...
+		if (result.hasConflicts()) {
+			String existingWithHash = appendTrailer(getExistingDoc().getBody(), original);
+			existingWithHash += "\n" + HashTrailer.CONFLICTED;
+			// the contents of conflictid file .conflicted, with the regions added back
+			return new MergingAndConflicts(existingWithHash, result.getConflicts(),
+				() -> RegionIndex.restore(result.getText(), existingIndex, newIndex));
+		}
+		
+		// Add regions back into contents, the existing file's regions win,
+		// their places are kept so the written file need not be partitioned again
+		List<RegionSlice> slices = new ArrayList<>();
+		String merged = restore(result.getText(), existingIndex, newIndex, slices);
+		
+		// if there is no conflicts..
+		merged = appendTrailer(merged, original);
+		return new MergingAndConflicts(merged, MergePath.FullMerge, () -> getExistingDoc().addedLines(baseLines), slices);
+	}
+
+	/**
+	 * Merged files are written with a v2 trailer, so a file with a v1 trailer
+	 * is upgraded the first time it is merged.
+	 */
+
+	private String appendTrailer (String document, String original) {
+		HashTrailer like = getExistingDoc().getHashTrailer();
+		long start = now();
+		String appended = HashTrailer.append(document, original, like);
+		timed(Phase.TrailerWriting, start, original.length(), getExistingDoc().getOriginalLineCount());
+		return appended;
+	}
+
+	private String restore (String merged, RegionIndex existingIndex, RegionIndex newIndex, List<RegionSlice> slices) {
+		long start = now();
+		String restored = RegionIndex.restore(merged, existingIndex, newIndex, slices);
+		timed(Phase.RegionRestoring, start, restored.length(), -1);
+		return restored;
+	}
+
+	/**
+	 * The clock is only read for a listener or a recorded event, so NONE
+	 * without a recording adds no work.
+	 */
+
+	private long now () {
+		return listener == MergeListener.NONE && event == null ? 0 : System.nanoTime();
+	}
+
+	private void timed (Phase phase, long start, long bytes, int lines) {
+		if (listener == MergeListener.NONE && event == null) {
+			return;
+		}
+		long nanos = System.nanoTime() - start;
+		if (listener != MergeListener.NONE) {
+			listener.phase(target, phase, nanos, bytes, lines);
+		}
+		if (event != null) {
+			event.addPhase(phase, nanos);
+		}
+	}
+
+	/**
+	 * This method looks for the two common cases where no diff is needed: 
+	 * the user never touched the existing file, or the template output did not change.
+	 * The hash alignment rules out the first cheaply, and a plain comparison with the 
+	 * original content confirms either, so a fast path gives the same result as the merge.
+	 *
+	 * @param original, newIndex and existingIndex
+	 * @return the fast path that applies, or FullMerge
+	 */
+
+	private MergePath fastPath (String original, RegionIndex newIndex, RegionIndex existingIndex) {
+		if (!fastPaths || original.isEmpty()) {
+			return MergePath.FullMerge;
+		}
+		// the existing body still hashes to its trailer, so nothing was added to it
+		if (getExistingDoc().isUnmodified()
+				&& existingIndex.getContent().equals(original)) {
+			return MergePath.ExistingUnchanged;
+		}
+		// the template generated the same lines as last time, the trailers may be 
+		// in different versions so the contents are compared
+		if (newIndex.getContent().equals(original)) {
+			return MergePath.TemplateUnchanged;
+		}
+		return MergePath.FullMerge;
+	}
+}
@@ -0,0 +1,162 @@
+package org.eclipse.epsilon.egl;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+ * A merge listener that keeps the timings of every phase of every file, and
+ * reports their percentiles per phase. It can be shared by concurrent merges,
+ * e.g. as the default listener of a BatchMerger run:
+ *
+ *   MergeStatistics statistics = new MergeStatistics();
+ *   MergeSession.setDefaultListener(statistics);
+ *   ... generate ...
+ *   System.out.print(statistics.report());
+ */
+
+public class MergeStatistics implements MergeListener {
+
+	/**
+	 * The timings of one phase, sorted only when a percentile is asked for
+	 */
+
+	private static class Samples {
+
+		private long[] nanos = new long[64];
+		private int count;
+		private boolean sorted = true;
+		private long bytes;
+		private long lines;
+
+		synchronized void add (long sample, long sampleBytes, int sampleLines) {
+			if (count == nanos.length)
+				nanos = Arrays.copyOf(nanos, count * 2);
+			if (count > 0 && sample < nanos[count - 1])
+				sorted = false;
+			nanos[count++] = sample;
+			bytes += sampleBytes;
+			if (sampleLines >= 0)
+				lines += sampleLines;
+		}
+
+		/**
+		 * @return the nearest-rank percentile, 0 if there are no samples
+		 */
+
+		synchronized long percentile (double percent) {
+			if (count == 0)
+				return 0;
+			if (!sorted) {
+				Arrays.sort(nanos, 0, count);
+				sorted = true;
+			}
+			int rank = (int) Math.ceil(percent / 100 * count);
+			return nanos[Math.min(count, Math.max(rank, 1)) - 1];
+		}
+
+		synchronized int count () {
+			return count;
+		}
+
+		synchronized long bytes () {
+			return bytes;
+		}
+
+		synchronized long lines () {
+			return lines;
+		}
+
+		synchronized void clear () {
+			nanos = new long[64];
+			count = 0;
+			sorted = true;
+			bytes = 0;
+			lines = 0;
+		}
+	}
+
+	/**
+	 * Fields that used in this class, every phase has its samples from the
+	 * start, so the map is only read and needs no lock
+	 */
+
+	private final Map<Phase, Samples> phases = new EnumMap<>(Phase.class);
+	private final Samples files = new Samples();
+
+	public MergeStatistics () {
+		for (Phase phase : Phase.values())
+			phases.put(phase, new Samples());
+	}
+
+	@Override
+	public void phase (String target, Phase phase, long nanos, long bytes, int lines) {
+		phases.get(phase).add(nanos, bytes, lines);
+	}
+
+	@Override
+	public void merged (String target, MergingAndConflicts result, long nanos) {
+		files.add(nanos, 0, -1);
+	}
+
+	public int getCount (Phase phase) {
+		return phases.get(phase).count();
+	}
+
+	/**
+	 * @param percent from 0 to 100, 50 is the median
+	 * @return the time in nanoseconds that this percent of the phase's samples took at most
+	 */
+
+	public long getPercentile (Phase phase, double percent) {
+		return phases.get(phase).percentile(percent);
+	}
+
+	public long getBytes (Phase phase) {
+		return phases.get(phase).bytes();
+	}
+
+	public long getLines (Phase phase) {
+		return phases.get(phase).lines();
+	}
+
+	/**
+	 * @return the files merged, and the percentiles of their whole merges
+	 */
+
+	public int getFileCount () {
+		return files.count();
+	}
+
+	public long getFilePercentile (double percent) {
+		return files.percentile(percent);
+	}
+
+	public void reset () {
+		for (Samples samples : phases.values())
+			samples.clear();
+		files.clear();
+	}
+
+	/**
+	 * @return one CSV line per phase that ran, and one for the whole merges
+	 */
+
+	public String report () {
+		StringBuilder report = new StringBuilder("Phase,Count,p50 (us),p90 (us),p99 (us),Max (us),Bytes,Lines\n");
+		for (Phase phase : Phase.values()) {
+			Samples samples = phases.get(phase);
+			if (samples.count() > 0)
+				row(report, phase.name(), samples);
+		}
+		if (files.count() > 0)
+			row(report, "Total", files);
+		return report.toString();
+	}
+
+	private static void row (StringBuilder report, String name, Samples samples) {
+		report.append(String.format("%s,%d,%d,%d,%d,%d,%d,%d%n", name, samples.count(),
+			samples.percentile(50) / 1000, samples.percentile(90) / 1000, samples.percentile(99) / 1000,
+			samples.percentile(100) / 1000, samples.bytes(), samples.lines()));
+	}
+}
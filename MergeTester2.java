@@ -1,22 +1,45 @@
 package org.eclipse.epsilon.egl;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import org.eclipse.jgit.diff.RawText;
-import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.lib.Constants;
-import org.eclipse.jgit.merge.MergeAlgorithm;
 import org.eclipse.jgit.merge.MergeFormatter;
 import org.eclipse.jgit.merge.MergeResult;
 
 public class MergeTester2 {
 	
 	MergeFormatter fmt = new MergeFormatter();
+	private final MergeEngine engine;
+	
+	/**
+	 * Merges with the engine chosen for this run, see MergeEngine.getDefault
+	 */
+	
+	public MergeTester2() {
+		this(MergeEngine.getDefault());
+	}
+	
+	public MergeTester2(MergeEngine engine) {
+		this.engine = engine;
+	}
+	
+	public MergeEngine getEngine() {
+		return engine;
+	}
 
 	public static void main(String[] args) throws IOException {
 		MergeTester2 tj = new MergeTester2();
@@ -28,14 +51,81 @@ public class MergeTester2 {
 	}
 
 	public String merge(String commonBase, String ours, String theirs) throws IOException {
-		MergeAlgorithm ma = new MergeAlgorithm();
-		// RawTextComparator.WS_IGNORE_ALL, 
-		MergeResult r = ma.merge(RawTextComparator.DEFAULT, T(commonBase), T(ours), T(theirs));
-		ByteArrayOutputStream bo = new ByteArrayOutputStream(50);
+		RawText o = T(ours);
+		RawText t = T(theirs);
+		MergeResult<RawText> r = merge(T(commonBase), o, t);
+		// the merged text is about as long as the longest side, so size the buffer once
+		ByteArrayOutputStream bo = new ByteArrayOutputStream(Math.max(o.getRawContent().length, t.getRawContent().length) + 64);
 		fmt.formatMerge(bo, r, "B", "O", "T", Constants.CHARACTER_ENCODING);
 		return new String(bo.toByteArray(), Constants.CHARACTER_ENCODING);
 	}
 	
+	/**
+	 * This method merges three texts and returns the structured result, so conflicts
+	 * can be counted and located without scanning the merged text for markers.
+	 * The merged text is only rendered when it is asked for.
+	 * 
+	 * @param commonBase, ours, theirs
+	 * @return the structured merge result
+	 */
+	
+	public StructuredMergeResult mergeStructured(String commonBase, String ours, String theirs) {
+		return new StructuredMergeResult(merge(T(commonBase), T(ours), T(theirs)));
+	}
+	
+	/**
+	 * This method merges raw file bytes and writes the merged result straight to out,
+	 * without encoding the inputs from or decoding the output into Strings.
+	 * 
+	 * @param commonBase, ours, theirs the file bytes, used as they are (not copied)
+	 * @param out where the merged result is written, it is not closed
+	 * @return the merge result, to check for conflicts
+	 */
+	
+	public MergeResult<RawText> merge(byte[] commonBase, byte[] ours, byte[] theirs, OutputStream out) throws IOException {
+		MergeResult<RawText> r = merge(T(commonBase), T(ours), T(theirs));
+		fmt.formatMerge(out, r, "B", "O", "T", Constants.CHARACTER_ENCODING);
+		return r;
+	}
+	
+	/**
+	 * This method merges the remaining bytes of three buffers and writes the merged
+	 * result to a channel, e.g. a FileChannel, through one write buffer.
+	 * 
+	 * @param commonBase, ours, theirs the buffers, their positions are not moved
+	 * @param out where the merged result is written, it is not closed
+	 * @return the merge result, to check for conflicts
+	 */
+	
+	public MergeResult<RawText> merge(ByteBuffer commonBase, ByteBuffer ours, ByteBuffer theirs, WritableByteChannel out) throws IOException {
+		MergeResult<RawText> r = merge(T(commonBase), T(ours), T(theirs));
+		OutputStream bo = new BufferedOutputStream(Channels.newOutputStream(out), 64 * 1024);
+		fmt.formatMerge(bo, r, "B", "O", "T", Constants.CHARACTER_ENCODING);
+		bo.flush();
+		return r;
+	}
+	
+	/**
+	 * This method merges three files and writes the merged result to target.
+	 * 
+	 * @param commonBase, ours, theirs the files to merge
+	 * @param target the file to write, created or truncated
+	 * @return the merge result, to check for conflicts
+	 */
+	
+	public MergeResult<RawText> merge(Path commonBase, Path ours, Path theirs, Path target) throws IOException {
+		byte[] b = Files.readAllBytes(commonBase);
+		byte[] o = Files.readAllBytes(ours);
+		byte[] t = Files.readAllBytes(theirs);
+		try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			return merge(ByteBuffer.wrap(b), ByteBuffer.wrap(o), ByteBuffer.wrap(t), out);
+		}
+	}
+	
+	private MergeResult<RawText> merge(RawText commonBase, RawText ours, RawText theirs) {
+		return engine.merge(commonBase, ours, theirs);
+	}
+	
 //	public static String t(String text) {
 //		StringBuilder r = new StringBuilder();
 //		for (int i = 0; i < text.length(); i++) {
@@ -62,6 +152,24 @@ public class MergeTester2 {
 		return new RawText(Constants.encode(text));
 	}
 	
+	public static RawText T(byte[] content) {
+		return new RawText(content);
+	}
+	
+	/**
+	 * A heap buffer that covers its whole array is used without copying.
+	 */
+	
+	public static RawText T(ByteBuffer content) {
+		if (content.hasArray() && content.arrayOffset() == 0 && content.position() == 0
+				&& content.remaining() == content.array().length) {
+			return new RawText(content.array());
+		}
+		byte[] copy = new byte[content.remaining()];
+		content.duplicate().get(copy);
+		return new RawText(copy);
+	}
+	
 	// Code taken from here: https://stackoverflow.com/questions/326390/how-do-i-create-a-java-string-from-the-contents-of-a-file
 	static String readFile(String path, Charset encoding)
 			  throws IOException
@@ -1,13 +1,14 @@
 package org.eclipse.epsilon.egl;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-import org.eclipse.epsilon.egl.output.OutputBuffer;
+import java.util.function.Supplier;
+
+import org.eclipse.epsilon.egl.HashedDoc.AddedLines;
+import org.eclipse.epsilon.egl.HashedDoc.LinesPerLine;
+import org.eclipse.epsilon.egl.RegionIndex.RegionSlice;
+import org.eclipse.epsilon.egl.StructuredMergeResult.Conflict;
 
 public class MergingAndConflicts {
 	
@@ -23,6 +24,18 @@ public class MergingAndConflicts {
 		NotYetMerged
 	}
 	
+	/**
+	 * An enum for how a merge was done: a full 3-way merge, or a fast path 
+	 * taken because one side was the same as the original content
+	 */
+	
+	public enum MergePath {
+		NotMerged,
+		FullMerge,
+		ExistingUnchanged,
+		TemplateUnchanged
+	}
+	
 	/**
 	 * Fields that used in this class to store a merging/conflicts status, and different contents
 	 */
@@ -30,17 +43,59 @@ public class MergingAndConflicts {
 	private StatusCode _status;
 	private String _newContents;
 	private String _conflictContents;
+	private Supplier<String> _conflictRenderer;
+	private List<Conflict> _conflicts = Collections.emptyList();
+	private MergePath _mergePath = MergePath.NotMerged;
+	private List<LinesPerLine> _missingLines = Collections.emptyList();
+	private List<AddedLines> _addedLines;
+	private Supplier<List<AddedLines>> _addedLinesFinder;
+	private List<RegionSlice> _regionSlices;
 	
 	/** 
-	* Private constructor
+	* Package constructor, results are made by MergeSession
 	*/
 	
-	private MergingAndConflicts (StatusCode status, String newContents, String conflictContents) {
+	MergingAndConflicts (StatusCode status, String newContents, String conflictContents) {
 		_status = status;
 		_newContents = newContents;
 	    _conflictContents = conflictContents;
 	}
 	
+	/**
+	 * Conflicted results keep the conflicts, and render the contents of
+	 * the conflict file (with markers) only when it is asked for.
+	 */
+	
+	MergingAndConflicts (String newContents, List<Conflict> conflicts, Supplier<String> conflictRenderer) {
+		_status = StatusCode.ConflictsFound;
+		_newContents = newContents;
+		_conflicts = conflicts;
+		_conflictRenderer = conflictRenderer;
+		_mergePath = MergePath.FullMerge;
+	}
+	
+	/**
+	 * Results for modified originals keep the runs of missing lines
+	 */
+	
+	MergingAndConflicts (List<LinesPerLine> missingLines) {
+		this(StatusCode.OriginalWasModified, "", "");
+		_missingLines = missingLines;
+	}
+	
+	/**
+	 * Merged results find the lines added to the existing contents only when they are asked for.
+	 */
+	
+	MergingAndConflicts (String newContents, MergePath mergePath, Supplier<List<AddedLines>> addedLinesFinder, List<RegionSlice> regionSlices) {
+		_status = StatusCode.MergedSuccessfully;
+		_newContents = newContents;
+		_conflictContents = "";
+		_mergePath = mergePath;
+		_addedLinesFinder = addedLinesFinder;
+		_regionSlices = regionSlices;
+	}
+	
 	public StatusCode getStatus () {
 		return _status;
 	}
@@ -50,14 +105,91 @@ public class MergingAndConflicts {
 	}
 	
 	public String getConflictContents () {
+		if (_conflictContents == null) {
+			_conflictContents = _conflictRenderer.get();
+			_conflictRenderer = null;
+		}
 		return _conflictContents;
 	}
 	
-//	// New changes... to detect where exactlly line/s have been deleted or modified
-//	public List<LinesPerLine> getMissingLines() {
-//		return _missingLines;
-//	}
-//	// until here
+	/**
+	 * @return the conflicts found by the merge, with their ours/theirs/base line ranges
+	 */
+	
+	public List<Conflict> getConflicts () {
+		return _conflicts;
+	}
+	
+	/**
+	 * @return how the contents were merged, NotMerged if the merge did not run
+	 */
+	
+	public MergePath getMergePath () {
+		return _mergePath;
+	}
+	
+	/**
+	 * @return where original lines were modified or deleted, empty unless the status is OriginalWasModified
+	 */
+	
+	public List<LinesPerLine> getMissingLines() {
+		return _missingLines;
+	}
+	
+	/**
+	 * @return the runs of lines added to the existing contents and kept by the merge, 
+	 * empty unless the status is MergedSuccessfully
+	 */
+	
+	public List<AddedLines> getAddedLines() {
+		if (_addedLines == null) {
+			_addedLines = _addedLinesFinder == null ? Collections.emptyList() : _addedLinesFinder.get();
+			_addedLinesFinder = null;
+		}
+		return _addedLines;
+	}
+	
+	/**
+	 * @return where the protected regions are in the new contents, as placed by 
+	 * the merge, or null if the merge did not place them
+	 */
+	
+	public List<RegionSlice> getRegionSlices() {
+		return _regionSlices;
+	}
+	
+	/**
+	 * @return the message telling where lines were added to the existing contents 
+	 * and kept by the merge, see addedLinesMessage
+	 */
+	
+	public String getAddedLinesMessage() {
+		return addedLinesMessage(getAddedLines());
+	}
+	
+	/**
+	 * This method tells where lines have been added to the generated lines,
+	 * one line of the message per added run. Lines are numbered as in the 
+	 * existing contents without regions, so a run after line N follows the 
+	 * first N lines of the file the user edited.
+	 * 
+	 * @param added the runs of added lines, in order
+	 * @return the message, "Protected regions preserved in " if no line was added
+	 */
+	
+	public static String addedLinesMessage(List<AddedLines> added) {
+		if (added.isEmpty()) {
+			return "Protected regions preserved in ";
+		}
+		StringBuilder message = new StringBuilder(64 * added.size() + 8);
+		for (AddedLines lines : added) {
+			int n = lines.getLines();
+			message.append(n).append(" line").append(n != 1 ? "s have" : " has")
+				.append(" been added and preserved after line ").append(lines.getAfter()).append('\n');
+		}
+		message.append("  in ");
+		return message.toString();
+	}
 	
 	
 	/**
@@ -65,7 +197,9 @@ public class MergingAndConflicts {
 	 * if the contents were previously conflicted, and
 	 * if so, returns ConflictsResolved.
 	 * If not so, it checks if all original lines are still present, and
-	 * if not, returns OriginalWasModified.
+	 * if not, returns OriginalWasModified. With a v2 trailer, untouched blocks
+	 * of lines are confirmed by their block hash, so the check only goes line
+	 * by line where the contents were edited.
 	 * Otherwise it will return a intermediate status.
 	 * 
 	 * @param existingContents
@@ -73,19 +207,7 @@ public class MergingAndConflicts {
 	 */
 	
 	public static MergingAndConflicts CheckContents (String existingContents) {
-		// check if the existing line has a hash at the buttom
-		if (existingContents.endsWith("conflicted")) {
-			// remove the last lane = conflicted
-			String newContents = HashedDoc.removeEndLines(existingContents, 1);
-			return new MergingAndConflicts(StatusCode.ConflictsResolved, newContents, "");
-		}
-		
-		// check if any of the original lines was modified.
-		if (!new HashedDoc(existingContents).allOriginalLinesPresent()) {
-			return new MergingAndConflicts(StatusCode.OriginalWasModified, "", "");
-		}
-		
-		return new MergingAndConflicts(StatusCode.NotYetMerged, existingContents, "");
+		return new MergeSession(existingContents).check();
 	}
 	
 	/**
@@ -104,79 +226,17 @@ public class MergingAndConflicts {
 	// existingContents = the contents in the disk..
 	// newContents = contents that comes from the transformation..
 	public static MergingAndConflicts DoMergingAndConflicts (String existingContents, String newContents) throws IOException {
-		
-		{
-			MergingAndConflicts checked = CheckContents(existingContents);
-			// not merge if there is a conflicts or the orginal was modified.. 
-			if (checked.getStatus() != StatusCode.NotYetMerged) {
-				return checked;
-			}
-		}
-		
-		// create hashes for existingContents and newContents,
-		HashedDoc existingDoc = new HashedDoc(existingContents);
-		String originalDoc = existingDoc.originalContent();
-		HashedDoc newDoc = new HashedDoc(newContents);
-		
-		// remove regions to not merge their content..
-		Map<String, List<String>> regions = new TreeMap<>();
-		String doc1 = removeRegions(newDoc.getBody(), regions);
-		String doc2 = removeRegions(existingDoc.getBody(), regions);
-		
-		// merge the contents
-		newContents = new MergeTester2().merge(originalDoc, doc1, doc2);
-		
-		// Add regions back into contents
-		for (String regionToken : regions.keySet()) {
-			List<String> newLines = new ArrayList<>();
-			for (String line : newContents.split("\n", -1)) {
-				newLines.add(line);
-				if (line.equals(regionToken))
-					newLines.addAll(regions.get(regionToken));
-			}
-			newContents = String.join("\n", newLines);
-		}
-		
-		// if conflicts found ...
-		if (newContents.contains("\n=======\n")) {
-			String existingWithHash = OutputBuffer.documentWithAppendedHashLine(existingDoc.getBody(), originalDoc);
-			existingWithHash += "\nconflicted";
-			return new MergingAndConflicts(StatusCode.ConflictsFound, existingWithHash, newContents); // newContents the contents of conflictid file .conflicted
-		}
-		// if there is no conflicts.. 
-		newContents = OutputBuffer.documentWithAppendedHashLine(newContents, originalDoc);
-		return new MergingAndConflicts(StatusCode.MergedSuccessfully, newContents, "");
+		// one session, so the existing contents are parsed and hash-aligned only once
+		return DoMergingAndConflicts(existingContents, newContents, null);
 	}
-
+	
 	/**
-	 * This method removes the regions from some content, returning the content 
-	 * without regions, and populating a map of region name -> lines.
-	 * It starts by searching for a head of Protected or Sync regions.
-	 * Then it ignores any contents until it finds the end of the regions.
-	 * All regions are stores in the regions parameter.
-	 * Finally, it returns the content without regions.
-	 * 
-	 * @param content, and regions
-	 * @return the content without regions
-	 */
-	
-	private static String removeRegions(String content, Map<String, List<String>> regions) {
-		List<String> newLines = new ArrayList<String>();
-		String[] lines = content.split("\n", -1);
-		String inRegion = "";
-		for (String line : lines) {
-			if (!inRegion.isEmpty()) {
-				regions.get(inRegion).add(line);
-				if (OutputBuffer.isRegionEnd(line))
-					inRegion = "";
-				continue;
-			}
-			if (OutputBuffer.isRegionStart(line)) {
-				inRegion = line;
-				regions.put(inRegion, new ArrayList<>());
-			}
-			newLines.add(line);
-		}
-		return String.join("\n", newLines);
+	 * @param target the name of the file being merged, passed to the merge listener
+	 */
+	
+	public static MergingAndConflicts DoMergingAndConflicts (String existingContents, String newContents, String target) throws IOException {
+		MergeSession session = new MergeSession(existingContents, newContents);
+		session.setTarget(target);
+		return session.merge();
 	}
 }
\ No newline at end of file
@@ -10,13 +10,13 @@
 package org.eclipse.epsilon.egl.merge.output;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class Output {
 
 	private final List<Region> regions = new ArrayList<>(0);
-	private final Collection<String> locatedRegionIds = new LinkedHashSet<>();
 	private final Collection<String> duplicatedLocatedRegionIds = new LinkedHashSet<>();
+	private final List<LocatedRegion> locatedRegions;
+	private final Map<String, LocatedRegion> locatedRegionsById;
 	
 	public Output(Region... regions) {
 		this(Arrays.asList(regions));	
@@ -24,19 +24,25 @@ public class Output {
 	
 	public Output(Collection<? extends Region> regions) {
 		this.regions.addAll(regions);
-		processIds();
+		final List<LocatedRegion> located = new ArrayList<>();
+		final Map<String, LocatedRegion> byId = new HashMap<>();
+		processIds(located, byId);
+		this.locatedRegions = Collections.unmodifiableList(located);
+		this.locatedRegionsById = Collections.unmodifiableMap(byId);
 	}
 	
-	private void processIds() {
+	// located regions in order, and by id; the first region with a duplicated id is the one looked up
+	private void processIds(List<LocatedRegion> located, Map<String, LocatedRegion> byId) {
 		for (Region r : regions) {
 			if (r instanceof LocatedRegion) {
 				final LocatedRegion lr = (LocatedRegion) r;
 				final String id = lr.getId();
-				if (locatedRegionIds.contains(id)) {
+				located.add(lr);
+				if (byId.containsKey(id)) {
 					duplicatedLocatedRegionIds.add(id);
 				}
 				else {
-					locatedRegionIds.add(id);
+					byId.put(id, lr);
 				}
 			}
 		}
@@ -47,23 +53,11 @@ public class Output {
 	}
 	
 	public List<LocatedRegion> getLocatedRegions() {
-		return regions.stream()
-				.filter(LocatedRegion.class::isInstance)
-				.map(LocatedRegion.class::cast)
-				.collect(Collectors.toList());
+		return locatedRegions;
 	}
 	
 	public LocatedRegion getLocatedRegion(String id) {
-		for (Region region : regions) {
-			if (region instanceof LocatedRegion) {
-				LocatedRegion locatedRegion = (LocatedRegion)region;
-				if (locatedRegion.getId().equals(id)) {
-					return locatedRegion;
-				}
-			}
-		}
-		
-		return null;
+		return locatedRegionsById.get(id);
 	}
 	
 	public List<String> getProblems() {
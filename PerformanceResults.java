@@ -0,0 +1,140 @@
+package org.eclipse.epsilon.egl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Keeps the durations of the performance tests in memory, in nanoseconds, and
+ * writes them once at the end, so no file is opened inside the measured loop.
+ * Recording only appends to an array; flush writes the files when it is called:
+ *
+ *   PerformanceResults results = new PerformanceResults();
+ *   long start = System.nanoTime();
+ *   ... merge ...
+ *   results.record(strategy, lines, System.nanoTime() - start);
+ *   ...
+ *   results.flush(folder, "PerformanceTests");
+ *
+ * The flush writes every duration to <name>.csv, and min, median, p99 and max
+ * per strategy and line count to <name>Summary.csv and <name>Summary.json.
+ */
+
+public class PerformanceResults {
+
+	/**
+	 * The durations of one strategy and line count, in the order recorded
+	 */
+
+	private static class Samples {
+
+		private final TestStrategy strategy;
+		private final int lines;
+		private long[] nanos = new long[128];
+		private int count;
+
+		Samples (TestStrategy strategy, int lines) {
+			this.strategy = strategy;
+			this.lines = lines;
+		}
+
+		void add (long duration) {
+			if (count == nanos.length)
+				nanos = Arrays.copyOf(nanos, count * 2);
+			nanos[count++] = duration;
+		}
+
+		/**
+		 * @return the nearest-rank percentile of the sorted durations
+		 */
+
+		static long percentile (long[] sorted, double percent) {
+			int rank = (int) Math.ceil(percent / 100 * sorted.length);
+			return sorted[Math.min(sorted.length, Math.max(rank, 1)) - 1];
+		}
+	}
+
+	/**
+	 * Fields that used in this class, the samples by strategy and line count,
+	 * in the order they were first recorded
+	 */
+
+	private final Map<String, Samples> samples = new LinkedHashMap<>();
+	private Samples last;
+
+	/**
+	 * This method records the duration of one merge. Consecutive records of the
+	 * same strategy and line count do not look up the map.
+	 *
+	 * @param duration in nanoseconds, from System.nanoTime
+	 */
+
+	public synchronized void record (TestStrategy strategy, int lines, long duration) {
+		Samples s = last;
+		if (s == null || s.strategy != strategy || s.lines != lines) {
+			s = samples.computeIfAbsent(strategy.name() + "," + lines, key -> new Samples(strategy, lines));
+			last = s;
+		}
+		s.add(duration);
+	}
+
+	public synchronized int getCount () {
+		int count = 0;
+		for (Samples s : samples.values())
+			count += s.count;
+		return count;
+	}
+
+	/**
+	 * This method takes the recorded durations, leaving the results empty, and
+	 * writes them. It is called once the measured merges are done, so the files 
+	 * are written on the calling thread.
+	 *
+	 * @param folder where the files are written, made if missing
+	 * @param name the name the files start with
+	 */
+
+	public void flush (Path folder, String name) throws IOException {
+		List<Samples> taken;
+		synchronized (this) {
+			taken = new ArrayList<>(samples.values());
+			samples.clear();
+			last = null;
+		}
+		write(taken, folder, name);
+	}
+
+	private static void write (List<Samples> taken, Path folder, String name) throws IOException {
+		Files.createDirectories(folder);
+		try (Writer csv = Files.newBufferedWriter(folder.resolve(name + ".csv"), StandardCharsets.UTF_8)) {
+			csv.write("Strategy,Number of Lines,Duration (ns)\n");
+			for (Samples s : taken)
+				for (int i = 0; i < s.count; ++i)
+					csv.write(s.strategy + "," + s.lines + "," + s.nanos[i] + "\n");
+		}
+
+		StringBuilder summary = new StringBuilder("Strategy,Number of Lines,Count,Min (ns),Median (ns),p99 (ns),Max (ns)\n");
+		StringBuilder json = new StringBuilder("{\n  \"unit\": \"ns\",\n  \"results\": [");
+		String separator = "\n";
+		for (Samples s : taken) {
+			long[] sorted = Arrays.copyOf(s.nanos, s.count);
+			Arrays.sort(sorted);
+			long min = sorted[0], median = Samples.percentile(sorted, 50), p99 = Samples.percentile(sorted, 99), max = sorted[sorted.length - 1];
+			summary.append(String.format("%s,%d,%d,%d,%d,%d,%d\n", s.strategy, s.lines, s.count, min, median, p99, max));
+			json.append(separator).append(String.format(
+				"    {\"strategy\": \"%s\", \"lines\": %d, \"count\": %d, \"min\": %d, \"median\": %d, \"p99\": %d, \"max\": %d}",
+				s.strategy, s.lines, s.count, min, median, p99, max));
+			separator = ",\n";
+		}
+		json.append("\n  ]\n}\n");
+		Files.write(folder.resolve(name + "Summary.csv"), summary.toString().getBytes(StandardCharsets.UTF_8));
+		Files.write(folder.resolve(name + "Summary.json"), json.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,251 @@
+package org.eclipse.epsilon.egl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.epsilon.egl.output.OutputBuffer;
+
+public class RegionIndex {
+
+	/**
+	 * One Protected/Sync region taken out of a document. The id is the head line
+	 * of the region, which stays in the stripped content as its anchor, and the
+	 * body is every line after the head up to and including the end line.
+	 */
+
+	public static class IndexedRegion {
+
+		private final String id;
+		private final int headLine;
+		private final int bodyStart;
+		private final int bodyEnd;
+		private final int bodyLines;
+		private final String body;
+
+		IndexedRegion (String id, int headLine, int bodyStart, int bodyEnd, int bodyLines, String body) {
+			this.id = id;
+			this.headLine = headLine;
+			this.bodyStart = bodyStart;
+			this.bodyEnd = bodyEnd;
+			this.bodyLines = bodyLines;
+			this.body = body;
+		}
+
+		public String getId () {
+			return id;
+		}
+
+		/**
+		 * @return the line of the region head in the stripped content
+		 */
+
+		public int getHeadLine () {
+			return headLine;
+		}
+
+		/**
+		 * @return the offset of the body in the original content
+		 */
+
+		public int getBodyStart () {
+			return bodyStart;
+		}
+
+		public int getBodyEnd () {
+			return bodyEnd;
+		}
+
+		public int getBodyLines () {
+			return bodyLines;
+		}
+
+		public String getBody () {
+			return body;
+		}
+	}
+
+	/**
+	 * Where a region ended up in restored content: from the start of its head
+	 * line to the end of its body, so the slice holds the whole region.
+	 */
+
+	public static class RegionSlice {
+
+		private final int start;
+		private final int end;
+
+		RegionSlice (int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		public int getStart () {
+			return start;
+		}
+
+		public int getEnd () {
+			return end;
+		}
+	}
+
+	/**
+	 * Fields that used in this class
+	 */
+
+	private final String content;
+	private final int lineCount;
+	private final List<IndexedRegion> regions;
+	private final Map<String, List<IndexedRegion>> regionsById;
+
+	private RegionIndex (String content, int lineCount, List<IndexedRegion> regions) {
+		this.content = content;
+		this.lineCount = lineCount;
+		this.regions = regions;
+		this.regionsById = new HashMap<>();
+		for (IndexedRegion region : regions) {
+			regionsById.computeIfAbsent(region.getId(), id -> new ArrayList<>(1)).add(region);
+		}
+	}
+
+	/**
+	 * @return the content without the bodies of its regions
+	 */
+
+	public String getContent () {
+		return content;
+	}
+
+	/**
+	 * @return the lines of the content without the bodies of its regions
+	 */
+
+	public int getLineCount () {
+		return lineCount;
+	}
+
+	/**
+	 * @return the regions in the order they appear in the document
+	 */
+
+	public List<IndexedRegion> getRegions () {
+		return Collections.unmodifiableList(regions);
+	}
+
+	/**
+	 * @return the regions with the given head line, in document order
+	 */
+
+	public List<IndexedRegion> getRegions (String id) {
+		List<IndexedRegion> found = regionsById.get(id);
+		return found == null ? Collections.emptyList() : Collections.unmodifiableList(found);
+	}
+
+	/**
+	 * This method removes the regions from some content in one pass.
+	 * It starts by searching for a head of Protected or Sync regions.
+	 * Then it ignores any contents until it finds the end of the regions.
+	 * Every region is recorded with its head, offsets and body, so regions
+	 * sharing the same head line are all kept.
+	 *
+	 * @param content
+	 * @return the index, holding the content without regions and the regions
+	 */
+
+	public static RegionIndex strip (String content) {
+		IndexedDocument doc = new IndexedDocument(content);
+		StringBuilder stripped = new StringBuilder(content.length());
+		List<IndexedRegion> regions = new ArrayList<>();
+		int keptLines = 0;
+		String head = null;
+		int headLine = 0;
+		int firstBodyLine = 0;
+		for (int l = 0; l < doc.getLineCount(); ++l) {
+			String line = doc.getLine(l);
+			if (head != null) {
+				if (OutputBuffer.isRegionEnd(line)) {
+					regions.add(region(doc, head, headLine, firstBodyLine, l + 1));
+					head = null;
+				}
+				continue;
+			}
+			if (keptLines > 0)
+				stripped.append('\n');
+			stripped.append(line);
+			if (OutputBuffer.isRegionStart(line)) {
+				head = line;
+				headLine = keptLines;
+				firstBodyLine = l + 1;
+			}
+			++keptLines;
+		}
+		// a region that is never closed runs to the end of the content
+		if (head != null) {
+			regions.add(region(doc, head, headLine, firstBodyLine, doc.getLineCount()));
+		}
+		return new RegionIndex(stripped.toString(), keptLines, regions);
+	}
+
+	private static IndexedRegion region (IndexedDocument doc, String head, int headLine, int from, int to) {
+		int start = from < to ? doc.getLineStart(from) : doc.getContent().length();
+		int end = from < to ? doc.getLineEnd(to - 1) : start;
+		return new IndexedRegion(head, headLine, start, end, to - from, doc.getText(from, to));
+	}
+
+	/**
+	 * This method adds the regions back into merged content in one pass.
+	 * The n-th head line with a given id gets the n-th region with that id,
+	 * taken from the preferred index (the existing file, whose regions hold the
+	 * user's code) or, when it has no such region, from the fallback index.
+	 * Heads that occur more often than they were recorded, e.g. on both sides of
+	 * a conflict, get the last recorded region again.
+	 *
+	 * @param merged, preferred and fallback
+	 * @return the merged content with the region bodies restored
+	 */
+
+	public static String restore (String merged, RegionIndex preferred, RegionIndex fallback) {
+		return restore(merged, preferred, fallback, null);
+	}
+
+	/**
+	 * @param slices if not null, the place of every restored region is added to it, in order
+	 */
+
+	public static String restore (String merged, RegionIndex preferred, RegionIndex fallback, List<RegionSlice> slices) {
+		if (preferred.regions.isEmpty() && fallback.regions.isEmpty()) {
+			return merged;
+		}
+		IndexedDocument doc = new IndexedDocument(merged);
+		StringBuilder restored = new StringBuilder(merged.length() + preferred.content.length() / 2);
+		Map<String, Integer> seen = new HashMap<>();
+		for (int l = 0; l < doc.getLineCount(); ++l) {
+			if (l > 0)
+				restored.append('\n');
+			int headStart = restored.length();
+			restored.append(merged, doc.getLineStart(l), doc.getLineEnd(l));
+			String line = doc.getLine(l);
+			if (!preferred.regionsById.containsKey(line) && !fallback.regionsById.containsKey(line))
+				continue;
+			int occurrence = seen.merge(line, 1, Integer::sum) - 1;
+			IndexedRegion region = pick(preferred.getRegions(line), fallback.getRegions(line), occurrence);
+			if (region.getBodyLines() > 0) {
+				restored.append('\n').append(region.getBody());
+			}
+			if (slices != null) {
+				slices.add(new RegionSlice(headStart, restored.length()));
+			}
+		}
+		return restored.toString();
+	}
+
+	private static IndexedRegion pick (List<IndexedRegion> preferred, List<IndexedRegion> fallback, int occurrence) {
+		if (occurrence < preferred.size())
+			return preferred.get(occurrence);
+		if (occurrence < fallback.size())
+			return fallback.get(occurrence);
+		return preferred.isEmpty() ? fallback.get(fallback.size() - 1) : preferred.get(preferred.size() - 1);
+	}
+}
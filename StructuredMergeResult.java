@@ -0,0 +1,167 @@
+package org.eclipse.epsilon.egl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.merge.MergeChunk;
+import org.eclipse.jgit.merge.MergeChunk.ConflictState;
+import org.eclipse.jgit.merge.MergeFormatter;
+import org.eclipse.jgit.merge.MergeResult;
+
+public class StructuredMergeResult {
+
+	/**
+	 * Sequence indexes of the merge inputs, in the order they are given to the merge
+	 */
+
+	static final int BASE = 0;
+	static final int OURS = 1;
+	static final int THEIRS = 2;
+
+	/**
+	 * One conflict of a 3-way merge, as line ranges (begin inclusive, end exclusive)
+	 * of the ours, theirs and base texts. The base range is empty when the merge
+	 * algorithm does not report it.
+	 */
+
+	public static class Conflict {
+
+		private final RawText[] texts;
+		private final int[] begin = new int[3];
+		private final int[] end = new int[3];
+
+		Conflict (RawText[] texts) {
+			this.texts = texts;
+		}
+
+		void setRange (int sequence, int from, int to) {
+			begin[sequence] = from;
+			end[sequence] = to;
+		}
+
+		public int getOursBegin () {
+			return begin[OURS];
+		}
+
+		public int getOursEnd () {
+			return end[OURS];
+		}
+
+		public int getTheirsBegin () {
+			return begin[THEIRS];
+		}
+
+		public int getTheirsEnd () {
+			return end[THEIRS];
+		}
+
+		public int getBaseBegin () {
+			return begin[BASE];
+		}
+
+		public int getBaseEnd () {
+			return end[BASE];
+		}
+
+		public String getOurs () {
+			return slice(OURS);
+		}
+
+		public String getTheirs () {
+			return slice(THEIRS);
+		}
+
+		public String getBase () {
+			return slice(BASE);
+		}
+
+		private String slice (int sequence) {
+			if (begin[sequence] == end[sequence])
+				return "";
+			return texts[sequence].getString(begin[sequence], end[sequence], true);
+		}
+	}
+
+	/**
+	 * Fields that used in this class
+	 */
+
+	private final MergeResult<RawText> result;
+	private final List<Conflict> conflicts;
+
+	/**
+	 * This method walks the chunks of the merge result once and collects
+	 * the line ranges of every conflict.
+	 *
+	 * @param result the merge of base, ours and theirs, in that order
+	 */
+
+	public StructuredMergeResult (MergeResult<RawText> result) {
+		this.result = result;
+		List<Conflict> found = new ArrayList<>();
+		if (result.containsConflicts()) {
+			RawText[] texts = result.getSequences().toArray(new RawText[3]);
+			Conflict current = null;
+			for (MergeChunk chunk : result) {
+				if (chunk.getConflictState() == ConflictState.NO_CONFLICT) {
+					current = null;
+					continue;
+				}
+				if (chunk.getConflictState() == ConflictState.FIRST_CONFLICTING_RANGE || current == null) {
+					current = new Conflict(texts);
+					found.add(current);
+				}
+				current.setRange(chunk.getSequenceIndex(), chunk.getBegin(), chunk.getEnd());
+			}
+		}
+		this.conflicts = Collections.unmodifiableList(found);
+	}
+
+	public MergeResult<RawText> getMergeResult () {
+		return result;
+	}
+
+	public boolean hasConflicts () {
+		return !conflicts.isEmpty();
+	}
+
+	public int getConflictCount () {
+		return conflicts.size();
+	}
+
+	public List<Conflict> getConflicts () {
+		return conflicts;
+	}
+
+	/**
+	 * This method writes the merged text, with conflict markers if there are conflicts.
+	 *
+	 * @param out where the merged text is written, it is not closed
+	 */
+
+	public void writeTo (OutputStream out) throws IOException {
+		new MergeFormatter().formatMerge(out, result, "B", "O", "T", Constants.CHARACTER_ENCODING);
+	}
+
+	/**
+	 * @return the merged text, with conflict markers if there are conflicts
+	 */
+
+	public String getText () {
+		try {
+			ByteArrayOutputStream bo = new ByteArrayOutputStream(result.getSequences().get(THEIRS).getRawContent().length + 64);
+			writeTo(bo);
+			return new String(bo.toByteArray(), Constants.CHARACTER_ENCODING);
+		} catch (IOException e) {
+			// only the in-memory stream is written to
+			throw new UncheckedIOException(e);
+		}
+	}
+}
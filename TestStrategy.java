@@ -0,0 +1,150 @@
+package org.eclipse.epsilon.egl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.epsilon.egl.output.OutputBuffer;
+
+/*
+ * The edit scenarios of the performance tests and benchmarks. Each one edits
+ * a generated file as a user would, and for conflicts makes the template put
+ * different lines in the same places.
+ */
+
+public enum TestStrategy {
+	OneLineAdded,
+	MultipleLinesAdded,
+	OneLineModified,
+	OneLineDeleted,
+	OneConflict,
+	MultipleConflict;
+
+	/**
+	 * Fields that used in this class
+	 */
+
+	// how many lines the multiple lines scenarios add
+	static final int MULTIPLE_LINES = 100;
+
+	// the last lines hold the hash trailer and are never edited
+	private static final int TRAILER_LINES = 4;
+
+	/**
+	 * @return the status the merge must end with for this scenario
+	 */
+
+	public MergingAndConflicts.StatusCode expectedStatus () {
+		switch (this) {
+		case OneLineModified:
+		case OneLineDeleted:
+			return MergingAndConflicts.StatusCode.OriginalWasModified;
+		case OneConflict:
+		case MultipleConflict:
+			return MergingAndConflicts.StatusCode.ConflictsFound;
+		default:
+			return MergingAndConflicts.StatusCode.MergedSuccessfully;
+		}
+	}
+
+	/**
+	 * This method applies the scenario to the lines of a generated file with its
+	 * hash trailer. The existing lines are the file the user edits, the template
+	 * lines are the next template output, only changed by the conflict scenarios.
+	 * Lines inside protected and sync regions are never edited, as the merge
+	 * keeps them whatever they hold. The edits only depend on random, so a seeded random
+	 * gives the same edits every run.
+	 *
+	 * @param existingLines, templateLines the same lines at first, edited in place
+	 * @param random
+	 */
+
+	public void apply (List<String> existingLines, List<String> templateLines, Random random) {
+		List<Integer> editable = editableLines(existingLines);
+		if (editable.isEmpty()) {
+			return;
+		}
+		switch (this) {
+		case OneLineAdded:
+			// a copy of one of the existing lines
+			existingLines.add(pick(editable, random), existingLines.get(pick(editable, random)));
+			break;
+		case MultipleLinesAdded:
+			for (int at : picks(editable, MULTIPLE_LINES, random))
+				existingLines.add(at, randomString(random));
+			break;
+		case OneLineModified:
+			existingLines.set(pick(editable, random), randomString(random));
+			break;
+		case OneLineDeleted:
+			existingLines.remove(pick(editable, random));
+			break;
+		case OneConflict:
+			int line = pick(editable, random);
+			existingLines.add(line, randomString(random));
+			templateLines.add(line, randomString(random));
+			break;
+		case MultipleConflict:
+			for (int at : picks(editable, MULTIPLE_LINES, random)) {
+				existingLines.add(at, randomString(random));
+				templateLines.add(at, randomString(random));
+			}
+			break;
+		}
+	}
+
+	/**
+	 * @return the lines outside protected and sync regions and their markers, before the
+	 * trailer; a line added at one of them goes before it, outside the regions
+	 */
+
+	static List<Integer> editableLines (List<String> lines) {
+		List<Integer> editable = new ArrayList<>();
+		boolean inRegion = false;
+		for (int l = 0; l < lines.size() - TRAILER_LINES; ++l) {
+			String line = lines.get(l);
+			if (inRegion) {
+				inRegion = !OutputBuffer.isRegionEnd(line) && !CorpusGenerator.isSyncEnd(line);
+				continue;
+			}
+			inRegion = OutputBuffer.isRegionStart(line) || CorpusGenerator.isSyncStart(line);
+			if (!inRegion)
+				editable.add(l);
+		}
+		return editable;
+	}
+
+	private static int pick (List<Integer> editable, Random random) {
+		return editable.get(random.nextInt(editable.size()));
+	}
+
+	/**
+	 * @return count picked lines, last first, so adding lines at one does not
+	 * move the ones after it
+	 */
+
+	private static int[] picks (List<Integer> editable, int count, Random random) {
+		int[] picked = new int[count];
+		for (int i = 0; i < count; ++i)
+			picked[i] = pick(editable, random);
+		Arrays.sort(picked);
+		for (int i = 0, j = count - 1; i < j; ++i, --j) {
+			int swap = picked[i];
+			picked[i] = picked[j];
+			picked[j] = swap;
+		}
+		return picked;
+	}
+
+	/**
+	 * @return ten random lowercase letters
+	 */
+
+	static String randomString (Random random) {
+		StringBuilder buffer = new StringBuilder(10);
+		for (int i = 0; i < 10; i++)
+			buffer.append((char) ('a' + random.nextInt(26)));
+		return buffer.toString();
+	}
+}
@@ -1,16 +1,37 @@
 package org.eclipse.epsilon.egl;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.eclipse.epsilon.egl.MergingAndConflicts.MergePath;
 import org.eclipse.epsilon.egl.MergingAndConflicts.StatusCode;
+import org.eclipse.epsilon.egl.merge.output.LocatedRegion;
+import org.eclipse.epsilon.egl.merge.output.Output;
+import org.eclipse.epsilon.egl.merge.partition.CommentBlockPartitioner;
+import org.eclipse.epsilon.egl.output.OutputBuffer;
 import org.eclipse.epsilon.emc.emf.EmfModel;
 import org.eclipse.epsilon.eol.IEolModule;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
@@ -30,6 +51,31 @@ In 5 scenario, in the same position of the template and its generated file two s
 In 6 scenario, in the same position of the template and its generated file two different values have been added after the first run (there is conflicts).
 In 7 scenario, in the same position of the template and its generated file more then two different values have been added manually after the first run (there isconflict). 
 In 8 scenario, when the hashe line was modified  
+In 9 scenario, where the auto-generated lines were deleted or modified is reported.
+In 10 scenario, protected regions that share the same start line keep their own contents.
+In 11 scenario, lines that look like conflict markers are merged as any other line.
+In 12 scenario, the merges that skip the 3-way merge give the same file as the 3-way merge.
+In 13 scenario, the generation index is kept across runs, whatever an interrupted run left in its journal.
+In 14 scenario, a file edited by hand right after it was generated is not found unchanged by the generation index, even with the same size and time, an older file is trusted by its size and time.
+In 15 scenario, the packed line hashes are the hashes of the generated hash lines.
+In 16 scenario, a file without its hash line is reported as modified.
+In 17 scenario, the v1 hash line is read, and upgraded to v2 when the file is first merged.
+In 18 scenario, a v2 hash line that was modified is detected by its checksum.
+In 19 scenario, the hash line of a file with CRLF line ends is written with CRLF line ends.
+In 20 scenario, the original lines are aligned with the file around repeated lines, moved lines and empty files.
+In 21 scenario, every merge engine gives the same merge as JGit when there is no conflict, and finds the conflicts.
+In 22 scenario, the message tells how many lines were added by hand and where, the same way on every merge path.
+In 23 scenario, the region slices of a merge cut the written file exactly at its protected regions.
+In 24 scenario, a line copied next to a generated line with the same v1 hash is kept as an added line.
+In 25 scenario, the base of a merge and the added lines come from the alignment, with a line the user inserted before a generated line with its hash.
+In 26 scenario, the hash trailer is read from the end of a file, with a multi-byte body, a hash line longer than a block, the conflicted marker and too few lines.
+In 27 scenario, a batch of merges gives its results in input order, whatever order they ran in, and a failed input does not stop the others.
+In 28 scenario, a v2 hash line falls back to matching line by line where a block of lines changed, also in a last block shorter than the others.
+In 29 scenario, the merge of bytes, buffers and files gives the merge of strings, with multi-byte characters and CRLF line ends.
+In 30 scenario, the merge metrics count the merges by status and path, and the MXBean shows the same counts.
+In 31 scenario, the merge statistics add up the phase timings they are given, and report their percentiles.
+In 32 scenario, the located regions of an output are kept in order and found by id, the first region wins when an id is repeated.
+In 33 scenario, the lines of an indexed document are the lines of split, with CRLF line ends, without a final newline and when it is empty.
 */
 
 public class UnitTests {
@@ -44,6 +90,9 @@ public class UnitTests {
 	// Temporary Folder for the model and the template..
 	public TemporaryFolder tempFolderModel = new TemporaryFolder();
 	public TemporaryFolder tempFolderEglTemplate = new TemporaryFolder();
+	
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
 
 //	@Before
 	public void init() throws IOException {
@@ -97,6 +146,30 @@ public class UnitTests {
 		return lines;
 	}
 	
+	/**
+	 * This method makes a generated file from some lines, with its hash line
+	 * appended as the template writes it.
+	 * 
+	 * @param the lines of the file.
+	 * @return the generated file.
+	 */
+	
+	private static String generated (String... lines) {
+		return OutputBuffer.documentWithAppendedHashLine(String.join("\n", lines));
+	}
+	
+	/**
+	 * This method edits a generated file by hand, the hash line stays the one 
+	 * that was generated.
+	 * 
+	 * @param a generated file, and the lines it has after the edit.
+	 * @return the edited file.
+	 */
+	
+	private static String edited (String generated, String... lines) {
+		return String.join("\n", lines) + generated.substring(new HashedDoc(generated).getBody().length());
+	}
+	
 	/*
 	 * Scenario 1, one line has been added into the auto-generated lines 
 	 */
@@ -231,4 +304,965 @@ public class UnitTests {
 	        StatusCode.OriginalWasModified.name(),
 	        results.getStatus().name());
 	}	
+	
+	/*
+	 * Scenario 9, the deleted and modified auto-generated lines are reported where they are.
+	 */
+	
+	@Test
+	public void doMissingLinesTest() throws IOException {
+		List<String> lines = readTestFileLines("/Test3/MDE.java");
+		lines.set(2, "change third line");
+		lines.remove(0);
+		MergingAndConflicts results = MergingAndConflicts.CheckContents(String.join("\n", lines));
+		List<HashedDoc.LinesPerLine> missing = results.getMissingLines();
+		assertEquals("test 9 - both runs should be reported", 2, missing.size());
+		assertEquals("test 9 - the first line was deleted", 0, missing.get(0).getLine());
+		assertEquals("test 9 - the first line was deleted", true, missing.get(0).isDeleted());
+		assertEquals("test 9 - the third line was modified", 2, missing.get(1).getLine());
+		assertEquals("test 9 - the third line was modified", false, missing.get(1).isDeleted());
+	}
+	
+	/*
+	 * Scenario 10, two protected regions with the same start line are kept apart, and each keeps its own contents.
+	 */
+	
+	@Test
+	public void doDuplicateRegionsTest() throws IOException {
+		String head = "\t// protected region body on begin";
+		String[] template = { "class A {", head, "\t// protected region body end", "\tint x;", head, "\t// protected region body end", "}" };
+		String[] edited = { "class A {", head, "\tint a;", "\t// protected region body end", "\tint x;", head, "\tint b;", "\t// protected region body end", "}" };
+		String content = String.join("\n", edited);
+		
+		RegionIndex index = RegionIndex.strip(content);
+		assertEquals("test 10 - both regions should be recorded", 2, index.getRegions(head).size());
+		assertEquals("test 10 - the first region keeps its body", "\tint a;\n\t// protected region body end", index.getRegions(head).get(0).getBody());
+		assertEquals("test 10 - the second region keeps its body", "\tint b;\n\t// protected region body end", index.getRegions(head).get(1).getBody());
+		assertEquals("test 10 - the start lines stay in the stripped content", 
+			String.join("\n", "class A {", head, "\tint x;", head, "}"), index.getContent());
+		assertEquals("test 10 - restoring gives the content back", content, RegionIndex.restore(index.getContent(), index, index));
+		
+		MergingAndConflicts results = MergingAndConflicts.DoMergingAndConflicts(generated(edited), generated(template));
+		assertEquals(
+			"test 10 - regions with the same start line should merge successful",
+			StatusCode.MergedSuccessfully.name(),
+			results.getStatus().name());
+		assertEquals("test 10 - each region keeps its own contents", content, new HashedDoc(results.getNewContents()).getBody());
+	}
+	
+	/*
+	 * Scenario 11, a line that was added by hand and looks like a conflict marker is not a conflict.
+	 */
+	
+	@Test
+	public void doMarkerLikeLinesTest() throws IOException {
+		String[] template = { "class A {", "\tint x;", "\tint y;", "\tint w;", "}" };
+		String[] edited = { "class A {", "<<<<<<< ours", "\tint x;", "=======", "\tint y;", ">>>>>>> theirs", "\tint w;", "}" };
+		String[] next = { "class A {", "\tint x;", "\tint y;", "\tint w;", "\tint z;", "}" };
+		
+		StructuredMergeResult merged = new MergeTester2().mergeStructured(String.join("\n", template), String.join("\n", next), String.join("\n", edited));
+		assertEquals("test 11 - marker-like lines should not be conflicts", 0, merged.getConflictCount());
+		
+		MergingAndConflicts results = MergingAndConflicts.DoMergingAndConflicts(edited(generated(template), edited), generated(next));
+		assertEquals(
+			"test 11 - marker-like lines should merge successful",
+			StatusCode.MergedSuccessfully.name(),
+			results.getStatus().name());
+		assertEquals("test 11 - both changes are kept", 
+			String.join("\n", "class A {", "<<<<<<< ours", "\tint x;", "=======", "\tint y;", ">>>>>>> theirs", "\tint w;", "\tint z;", "}"),
+			new HashedDoc(results.getNewContents()).getBody());
+	}
+	
+	/*
+	 * Scenario 12, when the user did not touch the file, or the template output did not change, the merge 
+	 * skips the 3-way merge, and the file, its regions and its hash line are the same as with the 3-way merge.
+	 */
+	
+	@Test
+	public void doFastPathsTest() throws IOException {
+		String head = "\t// protected region body on begin";
+		String[] template = { "class A {", "\tint x;", head, "\t// protected region body end", "}" };
+		String[] edited = { "class A {", "\tint x;", "\tint y;", head, "\tint a;", "\t// protected region body end", "}" };
+		String[] next = { "class A {", "\tint w;", "\tint x;", head, "\t// protected region body end", "}" };
+		String[] untouched = { "class A {", "\tint x;", head, "\tint a;", "\t// protected region body end", "}" };
+		
+		doFastPathTest(edited(generated(template), untouched), generated(next), MergePath.ExistingUnchanged);
+		doFastPathTest(edited(generated(template), edited), generated(template), MergePath.TemplateUnchanged);
+	}
+	
+	private void doFastPathTest(String existing, String next, MergePath path) {
+		MergingAndConflicts fast = new MergeSession(existing, next).merge();
+		MergeSession session = new MergeSession(existing, next);
+		session.setFastPaths(false);
+		MergingAndConflicts full = session.merge();
+		
+		assertEquals("test 12 - the fast path should be taken", path, fast.getMergePath());
+		assertEquals("test 12 - the 3-way merge should be taken", MergePath.FullMerge, full.getMergePath());
+		assertEquals("test 12 - both should merge successful", StatusCode.MergedSuccessfully, fast.getStatus());
+		assertEquals("test 12 - both should merge successful", StatusCode.MergedSuccessfully, full.getStatus());
+		assertEquals("test 12 - the files and hash lines should be the same", full.getNewContents(), fast.getNewContents());
+		assertEquals("test 12 - the region should be found", 1, fast.getRegionSlices().size());
+		assertEquals("test 12 - the regions should be in the same places", slices(full), slices(fast));
+	}
+	
+	private static List<String> slices(MergingAndConflicts results) {
+		List<String> slices = new ArrayList<>();
+		for (RegionIndex.RegionSlice slice : results.getRegionSlices())
+			slices.add(slice.getStart() + "-" + slice.getEnd());
+		return slices;
+	}
+	
+	/*
+	 * Scenario 13, the generation index replays its journal, skips the lines an interrupted run cut short 
+	 * or corrupted, and keeps the same entries when it is compacted and opened again.
+	 */
+	
+	@Test
+	public void doGenerationIndexJournalTest() throws IOException {
+		File folder = tempFolder.newFolder("generated");
+		Path indexFile = new File(folder, "generation.index").toPath();
+		Path journal = new File(folder, "generation.index.journal").toPath();
+		File a = target(folder, "A.java", "class A {}");
+		File b = target(folder, "B.java", "class B {}");
+		File c = target(folder, "C.java", "class C {}");
+		
+		GenerationIndex index = GenerationIndex.open(indexFile);
+		index.record(a, "class A {}", "output a");
+		index.record(b, "class B {}", "output b");
+		index.close();
+		index.record(c, "class C {}", "output c");
+		index.forget(c);
+		index.close();
+		
+		GenerationIndex replayed = GenerationIndex.open(indexFile);
+		assertEquals("test 13 - the journal should be replayed", fingerprint(index.get(a)), fingerprint(replayed.get(a)));
+		assertEquals("test 13 - the journal should be replayed", fingerprint(index.get(b)), fingerprint(replayed.get(b)));
+		assertEquals("test 13 - forgotten targets should stay forgotten", null, replayed.get(c));
+		assertEquals("test 13 - the journal should be folded into the index", false, Files.exists(journal));
+		
+		// an interrupted run: a valid line, a corrupted line and a line cut short
+		replayed.record(c, "class C {}", "output c");
+		replayed.close();
+		GenerationIndex other = GenerationIndex.open(new File(tempFolder.newFolder("other"), "other.index").toPath());
+		other.record(a, "class A {}", "changed a");
+		other.record(b, "class B {}", "changed b");
+		other.close();
+		List<String> otherLines = Files.readAllLines(new File(tempFolder.getRoot(), "other/other.index.journal").toPath());
+		String corrupted = "9" + otherLines.get(1).substring(1) + "\n";
+		String cut = otherLines.get(0).substring(0, otherLines.get(0).length() / 2);
+		Files.write(journal, (corrupted + cut).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		
+		GenerationIndex recovered = GenerationIndex.open(indexFile);
+		assertEquals("test 13 - the line cut short should be skipped", true, recovered.isUnchanged(a, "output a"));
+		assertEquals("test 13 - the corrupted line should be skipped", true, recovered.isUnchanged(b, "output b"));
+		assertEquals("test 13 - the valid line should be replayed", true, recovered.isUnchanged(c, "output c"));
+		
+		GenerationIndex compacted = GenerationIndex.open(indexFile);
+		for (File target : new File[] { a, b, c })
+			assertEquals("test 13 - compacting should keep every entry", fingerprint(recovered.get(target)), fingerprint(compacted.get(target)));
+	}
+	
+	/*
+	 * Scenario 14, a file recorded right after it was written is read to find an edit that keeps its size 
+	 * and modification time, a file modified long before it was recorded is trusted without reading it.
+	 */
+	
+	@Test
+	public void doGenerationIndexEditTest() throws IOException {
+		File folder = tempFolder.newFolder("edited");
+		File a = target(folder, "A.java", "int x = 1;");
+		GenerationIndex index = GenerationIndex.open(new File(folder, "generation.index").toPath());
+		index.record(a, "int x = 1;", "output a");
+		assertEquals("test 14 - a file just written should be racy", true, index.get(a).isRacy());
+		assertEquals("test 14 - the file should be unchanged", true, index.isUnchanged(a, "output a"));
+		assertEquals("test 14 - a new template output should be found", false, index.isUnchanged(a, "output b"));
+		
+		FileTime modified = Files.getLastModifiedTime(a.toPath());
+		Files.write(a.toPath(), "int x = 2;".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(a.toPath(), modified);
+		assertEquals("test 14 - the edit should be found", false, index.isUnchanged(a, "output a"));
+		
+		File b = target(folder, "B.java", "int y = 1;");
+		FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+		Files.setLastModifiedTime(b.toPath(), old);
+		index.record(b, "int y = 1;", "output b");
+		assertEquals("test 14 - a file modified long ago should not be racy", false, index.get(b).isRacy());
+		// its size and time are trusted, the text is not read
+		Files.write(b.toPath(), "int y = 2;".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(b.toPath(), old);
+		assertEquals("test 14 - the file should be trusted without reading it", true, index.isUnchanged(b, "output b"));
+		index.close();
+	}
+	
+	private static File target(File folder, String name, String contents) throws IOException {
+		File target = new File(folder, name);
+		Files.write(target.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+		return target;
+	}
+	
+	private static String fingerprint(GenerationIndex.Fingerprint fingerprint) {
+		return fingerprint.getSize() + " " + fingerprint.getModified() + " " + fingerprint.getRecorded() + " " 
+			+ fingerprint.getContentHash() + " " + fingerprint.getOutputHash();
+	}
+	
+	/*
+	 * Scenario 15, LineHashes hashes every line as OutputBuffer does: each single character, and random 
+	 * lines of ASCII and unicode characters, alone and inside a longer text.
+	 */
+	
+	@Test
+	public void doLineHashesTest() {
+		for (char c = 0; c < Character.MAX_VALUE; ++c) {
+			String line = String.valueOf(c);
+			assertEquals("test 15 - the hash of char " + (int) c + " should be the same", 
+				OutputBuffer.hashLine(line), LineHashes.unpack(LineHashes.hashLine(line)));
+		}
+		Random random = new Random(15);
+		for (int i = 0; i < 100000; ++i) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(80);
+			for (int j = 0; j < length; ++j)
+				text.append(random.nextBoolean() ? (char) (' ' + random.nextInt(95)) : (char) random.nextInt(Character.MAX_VALUE + 1));
+			String line = text.toString();
+			assertEquals("test 15 - the hash of \"" + line + "\" should be the same", 
+				OutputBuffer.hashLine(line), LineHashes.unpack(LineHashes.hashLine(line)));
+			assertEquals("test 15 - the hash of \"" + line + "\" in a text should be the same", 
+				LineHashes.hashLine(line), LineHashes.hashLine("\t" + line + "\n", 1, line.length() + 1));
+		}
+	}
+	
+	/*
+	 * Scenario 16, a file whose hash line was removed by hand is reported as modified, whatever its length.
+	 */
+	
+	@Test
+	public void doMissingHashLineTest() throws IOException {
+		String template = generated("class A {", "\tint x;", "}");
+		for (String existing : new String[] { "", "class A {}", "class A {\n}", "class A {\n\tint x;\n}", "class A {\n\tint x;\n\tint y;\n}" }) {
+			MergingAndConflicts results = MergingAndConflicts.DoMergingAndConflicts(existing, template);
+			assertEquals(
+				"test 16 - a file without hash line should be reported: " + existing,
+				StatusCode.OriginalWasModified.name(),
+				results.getStatus().name());
+		}
+	}
+	
+	/*
+	 * Scenario 17, a generated file with a v1 hash line is read, and the merge writes it back with a v2 hash line.
+	 */
+	
+	@Test
+	public void doHashLineUpgradeTest() throws IOException {
+		String[] template = { "class A {", "\tint x;", "}" };
+		String[] edited = { "class A {", "\tint x;", "\tint y;", "}" };
+		String[] next = { "class A {", "\tint w;", "\tint x;", "}" };
+		
+		HashedDoc v1 = new HashedDoc(generated(template));
+		assertEquals("test 17 - the template writes v1 hash lines", HashLineVersion.V1, v1.getVersion());
+		assertEquals("test 17 - the v1 hash line should be read", true, v1.isUnmodified());
+		assertEquals("test 17 - the v1 hash line should be read", String.join("\n", template), v1.originalContent());
+		
+		MergingAndConflicts results = MergingAndConflicts.DoMergingAndConflicts(edited(generated(template), edited), generated(next));
+		assertEquals(
+			"test 17 - the v1 file should merge successful",
+			StatusCode.MergedSuccessfully.name(),
+			results.getStatus().name());
+		HashedDoc v2 = new HashedDoc(results.getNewContents());
+		assertEquals("test 17 - the merged file should have a v2 hash line", HashLineVersion.V2, v2.getVersion());
+		assertEquals("test 17 - the v2 hash line should be read", true, v2.allOriginalLinesPresent());
+		assertEquals("test 17 - the v2 hash line should be read", String.join("\n", template), v2.originalContent());
+		assertEquals(
+			"test 17 - the v2 file should be checked as the v1 file was",
+			StatusCode.NotYetMerged.name(),
+			MergingAndConflicts.CheckContents(results.getNewContents()).getStatus().name());
+	}
+	
+	/*
+	 * Scenario 18, a v2 hash line that was modified fails its checksum, and the file is reported as modified.
+	 */
+	
+	@Test
+	public void doHashLineChecksumTest() throws IOException {
+		String[] lines = { "class A {", "\tint x;", "}" };
+		String merged = MergingAndConflicts.DoMergingAndConflicts(generated(lines), generated(lines)).getNewContents();
+		String hashLine = new HashedDoc(merged).getOldHash(false);
+		assertEquals("test 18 - the merged file should have a v2 hash line", true, hashLine.startsWith(HashLineVersion.V2_PREFIX));
+		
+		int at = HashLineVersion.V2_PREFIX.length() + 4;
+		String modified = hashLine.substring(0, at) + (hashLine.charAt(at) == 'A' ? 'B' : 'A') + hashLine.substring(at + 1);
+		MergingAndConflicts results = MergingAndConflicts.CheckContents(merged.replace(hashLine, modified));
+		assertEquals(
+			"test 18 - modify v2 hashes line should be detected",
+			StatusCode.OriginalWasModified.name(),
+			results.getStatus().name());
+	}
+	
+	/*
+	 * Scenario 19, the v2 hash line keeps the comment delimiters and CRLF line ends of the hash line it replaces.
+	 */
+	
+	@Test
+	public void doHashLineCrlfTest() throws IOException {
+		String file = "class A {\r\n\tint x;\r\n}\r\n/*\r\nXbK6CQ==fQ==\r\n*/";
+		HashedDoc existing = new HashedDoc(file);
+		String body = existing.getBody();
+		String appended = HashTrailer.append(body, body, existing.getHashTrailer());
+		
+		assertEquals("test 19 - the hash line should be a v2 hash line", true, appended.contains("\r\n/*\r\n" + HashLineVersion.V2_PREFIX));
+		assertEquals("test 19 - the hash line should end with CRLF", true, appended.endsWith("\r\n*/"));
+		assertEquals("test 19 - only CRLF line ends should be written", appended.split("\n").length, appended.split("\r\n").length);
+		HashedDoc doc = new HashedDoc(appended);
+		assertEquals("test 19 - the body should be read back", body, doc.getBody());
+		assertEquals("test 19 - the hash line should be read back", true, doc.isUnmodified());
+	}
+	
+	/*
+	 * Scenario 28, a v2 hash line of 152 lines has two blocks of 64 lines and a last block of 24. A line added 
+	 * in the second block fails its block hash and is found by matching that block line by line, while the blocks 
+	 * after it still match. A line modified in the last block is reported, and a block hash that was modified 
+	 * fails the checksum even though every line hash is right.
+	 */
+	
+	@Test
+	public void doHashLineBlocksTest() throws IOException {
+		List<String> template = new ArrayList<>();
+		template.add("class A {");
+		for (int i = 0; i < 150; ++i)
+			template.add("\tint field" + i + ";");
+		template.add("}");
+		String merged = MergingAndConflicts.DoMergingAndConflicts(generated(template.toArray(new String[0])), 
+			generated(template.toArray(new String[0]))).getNewContents();
+		HashedDoc doc = new HashedDoc(merged);
+		assertEquals("test 28 - the merged file should have a v2 hash line", HashLineVersion.V2, doc.getVersion());
+		assertEquals("test 28 - the lines should be in blocks", HashLineVersion.BLOCK_SIZE, 
+			HashLineVersion.V2.decode(doc.getOldHash(false)).getBlockSize());
+		assertEquals("test 28 - every block should match", true, doc.isUnmodified());
+		
+		List<String> added = inserted(template, 70, "\tint added;");
+		doc = new HashedDoc(edited(merged, added.toArray(new String[0])));
+		assertEquals("test 28 - the changed block should be matched line by line", true, doc.allOriginalLinesPresent());
+		assertEquals("test 28 - the added line should be found", false, doc.isUnmodified());
+		assertEquals("test 28 - the base should be the generated content", String.join("\n", template), doc.originalContent());
+		assertEquals("test 28 - one line should be added", 1, doc.addedLines().size());
+		assertEquals("test 28 - the line should be added after line 70", 70, doc.addedLines().get(0).getAfter());
+		
+		added = inserted(template, 140, "\tint added;");
+		doc = new HashedDoc(edited(merged, added.toArray(new String[0])));
+		assertEquals("test 28 - the last block should be matched line by line", true, doc.allOriginalLinesPresent());
+		assertEquals("test 28 - the line should be added after line 140", 140, doc.addedLines().get(0).getAfter());
+		
+		List<String> modified = new ArrayList<>(template);
+		modified.set(140, "\tint field139 = 1;");
+		doc = new HashedDoc(edited(merged, modified.toArray(new String[0])));
+		assertEquals("test 28 - the modified line in the last block should be found", false, doc.allOriginalLinesPresent());
+		assertEquals("test 28 - the modified line should be reported", 1, doc.missingOriginalLines().size());
+		assertEquals("test 28 - the modified line should be reported", 140, doc.missingOriginalLines().get(0).getLine());
+		
+		// the first block hash comes after the header, the line hashes and the block size
+		String hashLine = doc.getOldHash(false);
+		byte[] bytes = Base64.getDecoder().decode(hashLine.substring(HashLineVersion.V2_PREFIX.length()));
+		bytes[6 + 8 * template.size() + 4] ^= 1;
+		String damaged = HashLineVersion.V2_PREFIX + Base64.getEncoder().withoutPadding().encodeToString(bytes);
+		assertEquals("test 28 - the modified block hash should fail the checksum", null, HashLineVersion.V2.decode(damaged));
+		assertEquals(
+			"test 28 - modify v2 block hashes should be detected",
+			StatusCode.OriginalWasModified.name(),
+			MergingAndConflicts.CheckContents(merged.replace(hashLine, damaged)).getStatus().name());
+	}
+	
+	/*
+	 * Scenario 20, the alignment of the original lines (as hashes) with the lines of the file: repeated lines 
+	 * do not pull the alignment away, a moved line is reported once, and either side may be empty.
+	 */
+	
+	@Test
+	public void doLineAlignmentTest() {
+		// "}" (2) repeated between unique lines, the second unique line modified
+		LineAlignment repeated = LineAlignment.align(new long[] { 10, 2, 11, 2, 12, 2 }, new long[] { 10, 2, 99, 2, 12, 2 });
+		assertArrayEquals("test 20 - repeated lines should keep their places", new int[] { 0, 1, -1, 3, 4, 5 }, repeated.getMatched());
+		assertEquals("test 20 - the modified line should be reported", 1, repeated.getGaps().size());
+		assertEquals("test 20 - the modified line should be reported", 2, repeated.getGaps().get(0).getExpectedFrom());
+		assertEquals("test 20 - the modified line should be reported", false, repeated.getGaps().get(0).isDeleted());
+		
+		// a repeated line deleted, the lines after it stay matched
+		LineAlignment deleted = LineAlignment.align(new long[] { 1, 2, 3, 2, 4, 2 }, new long[] { 1, 2, 3, 4, 2 });
+		assertArrayEquals("test 20 - the deleted repeated line should be found", new int[] { 0, 1, 2, -1, 3, 4 }, deleted.getMatched());
+		
+		// only repeated lines, no line to anchor on
+		long[] braces = new long[300];
+		for (int l = 0; l < braces.length; ++l)
+			braces[l] = l % 3 == 0 ? 3 : 2;
+		long[] fewer = new long[braces.length - 1];
+		System.arraycopy(braces, 0, fewer, 0, 150);
+		System.arraycopy(braces, 151, fewer, 150, fewer.length - 150);
+		LineAlignment unanchored = LineAlignment.align(braces, fewer);
+		assertEquals("test 20 - all lines but one should be found", braces.length - 1, unanchored.getMatchedCount());
+		assertEquals("test 20 - one deleted line should be reported", 1, unanchored.getGaps().size());
+		assertEquals("test 20 - one deleted line should be reported", true, unanchored.getGaps().get(0).isDeleted());
+		
+		// too many edits to find the fewest, the lines are still matched in order
+		long[] half = new long[braces.length / 2];
+		for (int l = 0; l < half.length; ++l)
+			half[l] = braces[2 * l];
+		LineAlignment edited = LineAlignment.align(braces, half);
+		int last = -1;
+		for (int l = 0; l < braces.length; ++l) {
+			int at = edited.getMatched()[l];
+			if (at < 0)
+				continue;
+			assertEquals("test 20 - the lines should be matched in order", true, at > last);
+			assertEquals("test 20 - the lines should be matched to the same line", braces[l], half[at]);
+			last = at;
+		}
+		assertEquals("test 20 - some lines should be found", true, edited.getMatchedCount() > 0);
+		
+		// line 4 moved before line 2
+		LineAlignment moved = LineAlignment.align(new long[] { 1, 2, 3, 4, 5 }, new long[] { 1, 4, 2, 3, 5 });
+		assertArrayEquals("test 20 - the moved line should be missing from its place", new int[] { 0, 2, 3, -1, 4 }, moved.getMatched());
+		assertEquals("test 20 - the moved line should be reported once", 1, moved.getGaps().size());
+		
+		// empty sides
+		LineAlignment added = LineAlignment.align(new long[0], new long[] { 1, 2 });
+		assertEquals("test 20 - nothing expected, nothing missing", true, added.isComplete());
+		assertEquals("test 20 - nothing expected, nothing missing", 0, added.getGaps().size());
+		LineAlignment emptied = LineAlignment.align(new long[] { 1, 2, 3 }, new long[0]);
+		assertEquals("test 20 - all lines should be missing", 0, emptied.getMatchedCount());
+		assertEquals("test 20 - all lines should be deleted at once", 1, emptied.getGaps().size());
+		assertEquals("test 20 - all lines should be deleted at once", 3, emptied.getGaps().get(0).getExpectedTo());
+		assertEquals("test 20 - all lines should be deleted at once", true, emptied.getGaps().get(0).isDeleted());
+		assertEquals("test 20 - two empty sides are aligned", true, LineAlignment.align(new long[0], new long[0]).isComplete());
+	}
+	
+	/*
+	 * Scenario 21, the diff3 and Myers engines merge generated files as the default JGit engine does: lines added 
+	 * by the template or by hand at the start, in the middle and at the end, and lines deleted by the template, 
+	 * and lines added at the same place by both are conflicts for every engine.
+	 */
+	
+	@Test
+	public void doMergeEnginesTest() {
+		CorpusGenerator corpus = new CorpusGenerator(21).files(10).lines(200);
+		Random random = new Random(21);
+		for (int file = 0; file < corpus.getFiles(); ++file) {
+			List<String> base = new ArrayList<>(new HashedDoc(corpus.generate(file)).getLines());
+			int size = base.size();
+			for (int first : new int[] { 0, 1 + random.nextInt(size / 2 - 1), size }) {
+				int second = first < size / 2 ? first + size / 2 : first - size / 2;
+				String template = "\t// template line " + file;
+				String user = "\t// user line " + file;
+				
+				doMergeEnginesTest(base, inserted(base, first, template), base, inserted(base, first, template));
+				doMergeEnginesTest(base, base, inserted(base, first, user), inserted(base, first, user));
+				List<String> both = inserted(inserted(base, Math.max(first, second), user), Math.min(first, second), template);
+				if (first < second) {
+					doMergeEnginesTest(base, inserted(base, first, template), inserted(base, second, user), both);
+				}
+				List<String> deleted = new ArrayList<>(base);
+				deleted.remove(Math.min(first, size - 1));
+				List<String> deletedAndAdded = new ArrayList<>(inserted(base, second, user));
+				deletedAndAdded.remove(Math.min(first, size - 1) + (second <= Math.min(first, size - 1) ? 1 : 0));
+				doMergeEnginesTest(base, deleted, inserted(base, second, user), deletedAndAdded);
+				
+				for (MergeEngine engine : new MergeEngine[] { MergeEngine.HISTOGRAM, MergeEngine.MYERS, MergeEngine.DIFF3 }) {
+					StructuredMergeResult merged = new MergeTester2(engine).mergeStructured(String.join("\n", base),
+						String.join("\n", inserted(base, first, template)), String.join("\n", inserted(base, first, user)));
+					assertEquals("test 21 - " + engine.getName() + " should find the conflict", 1, merged.getConflictCount());
+				}
+			}
+		}
+	}
+	
+	private static void doMergeEnginesTest(List<String> base, List<String> ours, List<String> theirs, List<String> expected) {
+		for (MergeEngine engine : new MergeEngine[] { MergeEngine.HISTOGRAM, MergeEngine.MYERS, MergeEngine.DIFF3 }) {
+			StructuredMergeResult merged = new MergeTester2(engine).mergeStructured(String.join("\n", base), String.join("\n", ours), String.join("\n", theirs));
+			assertEquals("test 21 - " + engine.getName() + " should not find a conflict", 0, merged.getConflictCount());
+			assertEquals("test 21 - " + engine.getName() + " should merge as JGit", String.join("\n", expected), merged.getText());
+		}
+	}
+	
+	/*
+	 * Scenario 22, two lines are added by hand after the second generated line, the message tells it 
+	 * whether the template changed or not, and tells nothing was added when the user did not touch the file.
+	 */
+	
+	@Test
+	public void doAddedLinesMessageTest() {
+		String[] template = { "class A {", "\tint x;", "\tint y;", "}" };
+		String[] edited = { "class A {", "\tint x;", "\tint u1;", "\tint u2;", "\tint y;", "}" };
+		String[] next = { "class A {", "\tint w;", "\tint x;", "\tint y;", "}" };
+		String added = "2 lines have been added and preserved after line 2\n  in ";
+		
+		doAddedLinesMessageTest(edited(generated(template), edited), generated(next), MergePath.FullMerge, added);
+		doAddedLinesMessageTest(edited(generated(template), edited), generated(template), MergePath.TemplateUnchanged, added);
+		doAddedLinesMessageTest(generated(template), generated(next), MergePath.ExistingUnchanged, "Protected regions preserved in ");
+		
+		MergeSession session = new MergeSession(edited(generated(template), edited), generated(template));
+		session.setFastPaths(false);
+		assertEquals("test 22 - the 3-way merge should give the same message", added, session.merge().getAddedLinesMessage());
+		
+		assertEquals("test 22 - one line should be told apart", "1 line has been added and preserved after line 0\n  in ", 
+			MergingAndConflicts.addedLinesMessage(Collections.singletonList(new HashedDoc.AddedLines(0, 1))));
+	}
+	
+	private void doAddedLinesMessageTest(String existing, String next, MergePath path, String message) {
+		MergingAndConflicts results = new MergeSession(existing, next).merge();
+		assertEquals("test 22 - the merge should be successful", StatusCode.MergedSuccessfully, results.getStatus());
+		assertEquals("test 22 - the merge path", path, results.getMergePath());
+		assertEquals("test 22 - the added lines message", message, results.getAddedLinesMessage());
+	}
+	
+	/*
+	 * Scenario 23, a file with two protected regions edited by hand is merged on every path, each slice 
+	 * holds one whole region of the written contents, from its head line to its end line.
+	 */
+	
+	@Test
+	public void doRegionSlicesTest() {
+		String[] first = { "\t// protected region first on begin", "\tint a;", "\t// protected region first end" };
+		String[] second = { "\t// protected region second on begin", "\tint b;", "\tint c;", "\t// protected region second end" };
+		String[] template = { "class A {", "\tint x;", "\t// protected region first on begin", "\t// protected region first end", 
+			"\tint y;", "\t// protected region second on begin", "\t// protected region second end", "}" };
+		String[] edited = { "class A {", "\tint x;", "\tint u;", first[0], first[1], first[2], "\tint y;", 
+			second[0], second[1], second[2], second[3], "}" };
+		String[] untouched = { "class A {", "\tint x;", first[0], first[1], first[2], "\tint y;", 
+			second[0], second[1], second[2], second[3], "}" };
+		String[] next = { "class A {", "\tint w;", "\tint x;", "\t// protected region first on begin", "\t// protected region first end", 
+			"\tint y;", "\t// protected region second on begin", "\t// protected region second end", "}" };
+		
+		doRegionSlicesTest(edited(generated(template), edited), generated(next), MergePath.FullMerge, first, second);
+		doRegionSlicesTest(edited(generated(template), edited), generated(template), MergePath.TemplateUnchanged, first, second);
+		doRegionSlicesTest(edited(generated(template), untouched), generated(next), MergePath.ExistingUnchanged, first, second);
+	}
+	
+	private void doRegionSlicesTest(String existing, String next, MergePath path, String[]... regions) {
+		MergingAndConflicts results = new MergeSession(existing, next).merge();
+		assertEquals("test 23 - the merge should be successful", StatusCode.MergedSuccessfully, results.getStatus());
+		assertEquals("test 23 - the merge path", path, results.getMergePath());
+		
+		String contents = results.getNewContents();
+		List<RegionIndex.RegionSlice> slices = results.getRegionSlices();
+		assertEquals("test 23 - every region should have a slice", regions.length, slices.size());
+		for (int r = 0; r < regions.length; ++r) {
+			RegionIndex.RegionSlice slice = slices.get(r);
+			assertEquals("test 23 - " + path + " slice " + r + " should hold the region", 
+				String.join("\n", regions[r]), contents.substring(slice.getStart(), slice.getEnd()));
+			assertEquals("test 23 - " + path + " slice " + r + " should start a line", 
+				true, slice.getStart() == 0 || contents.charAt(slice.getStart() - 1) == '\n');
+		}
+	}
+	
+	/*
+	 * Scenario 24, "return field7;" and "return field9;" have the same v1 hash. The user copies the first 
+	 * one before the second, the merge still finds which one was generated, and keeps the copy as added, 
+	 * also when the template inserts lines ahead of them.
+	 */
+	
+	@Test
+	public void doHashCollisionTest() {
+		String[] template = { "class A {", "\tpublic String getfield7() {", "\t\treturn field7;", "\t}", 
+			"\tpublic String getfield9() {", "\t\treturn field9;", "\t}", "}" };
+		String[] edited = { "class A {", "\tpublic String getfield7() {", "\t\treturn field7;", "\t}", 
+			"\tpublic String getfield9() {", "\t\treturn field7;", "\t\treturn field9;", "\t}", "}" };
+		String[] next = { "class A {", "\tint w;", "\tpublic String getfield7() {", "\t\treturn field7;", "\t}", 
+			"\tpublic String getfield9() {", "\t\treturn field9;", "\t}", "}" };
+		String[] merged = { "class A {", "\tint w;", "\tpublic String getfield7() {", "\t\treturn field7;", "\t}", 
+			"\tpublic String getfield9() {", "\t\treturn field7;", "\t\treturn field9;", "\t}", "}" };
+		assertEquals("test 24 - the lines should have the same v1 hash", 
+			LineHashes.hashLine(template[2]), LineHashes.hashLine(template[5]));
+		
+		String existing = edited(generated(template), edited);
+		MergingAndConflicts results = new MergeSession(existing, generated(next)).merge();
+		assertEquals("test 24 - the merge should be successful", StatusCode.MergedSuccessfully, results.getStatus());
+		assertEquals("test 24 - the copied line should be kept", String.join("\n", merged), 
+			new HashedDoc(results.getNewContents()).getBody());
+		assertEquals("test 24 - the copied line should be told as added", 
+			"1 line has been added and preserved after line 5\n  in ", results.getAddedLinesMessage());
+		
+		results = new MergeSession(existing, generated(template)).merge();
+		assertEquals("test 24 - the template did not change", MergePath.TemplateUnchanged, results.getMergePath());
+		assertEquals("test 24 - the file should be kept", String.join("\n", edited), 
+			new HashedDoc(results.getNewContents()).getBody());
+		
+		// the template inserts lines ahead of the collision, one with the text of the copy, and the 
+		// lines right before the collision are blank lines, which are no anchor in the template
+		List<String> spaced = new ArrayList<>(Arrays.asList("class A {", "\tpublic String getfield9() {"));
+		for (int i = 0; i < 70; ++i)
+			spaced.add("");
+		spaced.addAll(Arrays.asList("\t\treturn field9;", "\t}", "}"));
+		List<String> spacedEdited = inserted(spaced, 72, "\t\treturn field7;");
+		List<String> spacedNext = new ArrayList<>(spaced);
+		spacedNext.addAll(1, Arrays.asList("\tint w;", "\tpublic String getfield8() {", "\t\treturn field7;", "\t}"));
+		List<String> spacedMerged = inserted(spacedNext, 76, "\t\treturn field7;");
+		
+		existing = edited(generated(spaced.toArray(new String[0])), spacedEdited.toArray(new String[0]));
+		results = new MergeSession(existing, generated(spacedNext.toArray(new String[0]))).merge();
+		assertEquals("test 24 - the merge should be successful", StatusCode.MergedSuccessfully, results.getStatus());
+		assertEquals("test 24 - the copied line should be kept after the inserted lines", String.join("\n", spacedMerged), 
+			new HashedDoc(results.getNewContents()).getBody());
+		assertEquals("test 24 - the copied line should be told as added", 
+			"1 line has been added and preserved after line 72\n  in ", results.getAddedLinesMessage());
+	}
+	
+	/*
+	 * Scenario 25, the user inserts a line before a generated line with the same hash: a copy of another 
+	 * line whose v1 hash collides, or the same line again. The base of the merge is still the generated 
+	 * content, and one line is added.
+	 */
+	
+	@Test
+	public void doBaseLinesTest() {
+		String[] template = { "class A {", "\tpublic String getfield9() {", "\t\treturn field9;", "\t}", "}" };
+		String[] copied = { "class A {", "\tpublic String getfield9() {", "\t\treturn field7;", "\t\treturn field9;", "\t}", "}" };
+		String[] duplicated = { "class A {", "\tpublic String getfield9() {", "\t\treturn field9;", "\t\treturn field9;", "\t}", "}" };
+		
+		HashedDoc doc = new HashedDoc(edited(generated(template), copied));
+		int[] base = doc.baseLines(String.join("\n", template));
+		assertArrayEquals("test 25 - the generated line should be in the base, not the copy", new int[] { 0, 1, 3, 4, 5 }, base);
+		assertEquals("test 25 - the base should be the generated content", String.join("\n", template), doc.originalContent(base));
+		List<HashedDoc.AddedLines> added = doc.addedLines(base);
+		assertEquals("test 25 - the copy should be added", 1, added.size());
+		assertEquals("test 25 - the copy should be added after line 2", 2, added.get(0).getAfter());
+		assertEquals("test 25 - one line should be added", 1, added.get(0).getLines());
+		
+		doc = new HashedDoc(edited(generated(template), duplicated));
+		base = doc.baseLines(String.join("\n", template));
+		assertEquals("test 25 - the base should be the generated content", String.join("\n", template), doc.originalContent(base));
+		added = doc.addedLines(base);
+		assertEquals("test 25 - one line should be added", 1, added.size());
+		assertEquals("test 25 - one line should be added", 1, added.get(0).getLines());
+	}
+	
+	/*
+	 * Scenario 26, the trailer read from the tail of a file is the trailer read from its contents: 
+	 * the body end is counted in bytes past a multi-byte body, a hash line longer than the first block 
+	 * read from the end is read whole, the conflicted marker is found after the trailer, and a file 
+	 * with fewer than three lines has no trailer.
+	 */
+	
+	@Test
+	public void doHashTrailerTailTest() throws IOException {
+		File folder = tempFolder.newFolder("tail");
+		String body = "class \u00c4 {\n\tString s = \"\u65e5\u672c\u8a9e\";\n}";
+		String document = body + "\n/*\nv2:abc\n*/";
+		HashTrailer trailer = HashTrailer.read(target(folder, "multibyte.java", document).toPath());
+		assertEquals("test 26 - the trailer lines should be read", Arrays.asList("/*", "v2:abc", "*/"), trailer.getLines());
+		assertEquals("test 26 - the body should end after its bytes", body.getBytes(StandardCharsets.UTF_8).length, trailer.getBodyEnd());
+		assertEquals("test 26 - the body should end after its chars", body.length(), HashTrailer.read(document).getBodyEnd());
+		assertEquals("test 26 - the trailer should be a hash trailer", true, trailer.hasHashLine());
+		
+		StringBuilder hashLine = new StringBuilder("v2:");
+		while (hashLine.length() < 10000)
+			hashLine.append("AAAAAAAAAAA=");
+		document = body + "\n/*\n" + hashLine + "\n*/";
+		trailer = HashTrailer.read(target(folder, "long.java", document).toPath());
+		assertEquals("test 26 - the long hash line should be read whole", hashLine.toString(), trailer.getHashLine());
+		assertEquals("test 26 - the body should end after its bytes", body.getBytes(StandardCharsets.UTF_8).length, trailer.getBodyEnd());
+		
+		String generated = generated("class A {", "\tint x;", "}");
+		String conflicted = generated + "\n" + HashTrailer.CONFLICTED;
+		trailer = HashTrailer.read(target(folder, "conflicted.java", conflicted).toPath());
+		assertEquals("test 26 - the conflicted marker should be found", true, trailer.isConflicted());
+		assertEquals("test 26 - a conflicted trailer should not be taken for a hash trailer", false, trailer.hasHashLine());
+		assertEquals("test 26 - the hash line should be read past the marker", 
+			HashTrailer.read(generated).getHashLine(), trailer.getHashLine());
+		MergingAndConflicts results = MergingAndConflicts.CheckContents(conflicted);
+		assertEquals("test 26 - the conflict should be resolved", StatusCode.ConflictsResolved, results.getStatus());
+		assertEquals("test 26 - the marker should be removed", generated, results.getNewContents());
+		assertEquals("test 26 - a line ending with the marker should not be taken for it", 
+			false, HashTrailer.read(generated + "\nnot conflicted").isConflicted());
+		
+		assertEquals("test 26 - two lines should have no trailer", null, HashTrailer.read(target(folder, "two.java", "a\nb").toPath()));
+		assertEquals("test 26 - two lines should have no trailer", null, HashTrailer.read("a\nb"));
+		assertEquals("test 26 - an empty file should have no trailer", null, HashTrailer.read(target(folder, "empty.java", "").toPath()));
+		assertEquals("test 26 - a marker after two lines should have no trailer", null, HashTrailer.read("a\nb\n" + HashTrailer.CONFLICTED));
+	}
+	
+	/*
+	 * Scenario 27, a batch with a clean merge, a conflict, modified generated lines, an input that throws and 
+	 * a target that cannot be read is run by an executor that runs the merges in the reverse order: every 
+	 * result is at the place of its input, the failures are kept in their own results, and the counts add up.
+	 */
+	
+	@Test
+	public void doBatchMergeTest() throws IOException {
+		String[] template = { "class A {", "\tint x;", "\tint y;", "}" };
+		String[] added = { "class A {", "\tint x;", "\tint a;", "\tint y;", "}" };
+		String[] modified = { "class A {", "\tint x = 1;", "\tint y;", "}" };
+		String[] next = { "class A {", "\tint x;", "\tint y;", "\tint z;", "}" };
+		String[] conflicting = { "class A {", "\tint x;", "\tint b;", "\tint y;", "}" };
+		File folder = tempFolder.newFolder("batch");
+		File target = target(folder, "A.java", edited(generated(template), added));
+		
+		List<BatchMerger.Input> inputs = Arrays.asList(
+			BatchMerger.Input.of("merged", edited(generated(template), added), generated(next)),
+			BatchMerger.Input.of("conflict", edited(generated(template), added), generated(conflicting)),
+			BatchMerger.Input.of("modified", edited(generated(template), modified), generated(next)),
+			BatchMerger.Input.of("throws", null, generated(next)),
+			BatchMerger.Input.of(new File(folder, "Missing.java").toPath(), generated(next)),
+			BatchMerger.Input.of(target.toPath(), generated(next)));
+		
+		// holds the merges until all of them are submitted, then runs them last to first
+		List<Runnable> held = new ArrayList<>();
+		BatchMerger.BatchResult batch = new BatchMerger(task -> {
+			held.add(task);
+			if (held.size() == inputs.size())
+				for (int i = held.size() - 1; i >= 0; --i)
+					held.get(i).run();
+		}).mergeAll(inputs);
+		
+		assertEquals("test 27 - every input should have a result", inputs.size(), batch.getFileCount());
+		for (int i = 0; i < inputs.size(); ++i)
+			assertEquals("test 27 - the results should be in input order", inputs.get(i), batch.getResults().get(i).getInput());
+		
+		List<BatchMerger.FileResult> results = batch.getResults();
+		assertEquals("test 27 - the first input should merge", StatusCode.MergedSuccessfully, results.get(0).getResult().getStatus());
+		assertEquals("test 27 - the second input should conflict", StatusCode.ConflictsFound, results.get(1).getResult().getStatus());
+		assertEquals("test 27 - the third input should be modified", StatusCode.OriginalWasModified, results.get(2).getResult().getStatus());
+		assertEquals("test 27 - the input that throws should fail", true, results.get(3).isFailed());
+		assertEquals("test 27 - a failed input should have no result", null, results.get(3).getResult());
+		assertEquals("test 27 - the missing target should fail", true, results.get(4).isFailed());
+		assertEquals("test 27 - the missing target should fail to be read", true, results.get(4).getError() instanceof IOException);
+		assertEquals("test 27 - the target read from disk should merge", StatusCode.MergedSuccessfully, results.get(5).getResult().getStatus());
+		assertEquals("test 27 - the target read from disk should merge as its contents", 
+			results.get(0).getResult().getNewContents(), results.get(5).getResult().getNewContents());
+		
+		assertEquals("test 27 - two inputs should merge", 2, batch.getStatusCount(StatusCode.MergedSuccessfully));
+		assertEquals("test 27 - one input should conflict", 1, batch.getStatusCount(StatusCode.ConflictsFound));
+		assertEquals("test 27 - one input should be modified", 1, batch.getStatusCount(StatusCode.OriginalWasModified));
+		assertEquals("test 27 - no conflict should be resolved", 0, batch.getStatusCount(StatusCode.ConflictsResolved));
+		assertEquals("test 27 - two inputs should fail", 2, batch.getFailedCount());
+		long total = 0;
+		for (BatchMerger.FileResult result : results)
+			total += result.getNanos();
+		assertEquals("test 27 - the total time should be the sum of the merges", total, batch.getTotalNanos());
+	}
+	
+	/*
+	 * Scenario 29, the byte[], ByteBuffer and Path merges of MergeTester2 write the same text as the String merge, 
+	 * with multi-byte UTF-8 characters and with CRLF line ends, both for a clean merge and for a conflict.
+	 */
+	
+	@Test
+	public void doByteMergeTest() throws IOException {
+		String base = "class \u00c4 {\n\tString s = \"\u65e5\u672c\";\n}\n";
+		String ours = "class \u00c4 {\n\tString s = \"\u65e5\u672c\";\n\tString t = \"\u00e9\";\n}\n";
+		String theirs = "class \u00c4 {\n\tString r = \"\ud83d\ude00\";\n\tString s = \"\u65e5\u672c\";\n}\n";
+		String conflicting = "class \u00c4 {\n\tString s = \"\u65e5\u672c\";\n\tString t = \"\u00fc\";\n}\n";
+		
+		doByteMergeTest(base, ours, theirs, false);
+		doByteMergeTest(base, ours, conflicting, true);
+		doByteMergeTest(base.replace("\n", "\r\n"), ours.replace("\n", "\r\n"), theirs.replace("\n", "\r\n"), false);
+		doByteMergeTest(base.replace("\n", "\r\n"), ours.replace("\n", "\r\n"), conflicting.replace("\n", "\r\n"), true);
+	}
+	
+	private void doByteMergeTest(String base, String ours, String theirs, boolean conflicts) throws IOException {
+		MergeTester2 tester = new MergeTester2();
+		String merged = tester.merge(base, ours, theirs);
+		byte[] b = base.getBytes(StandardCharsets.UTF_8);
+		byte[] o = ours.getBytes(StandardCharsets.UTF_8);
+		byte[] t = theirs.getBytes(StandardCharsets.UTF_8);
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		assertEquals("test 29 - the byte merge should find the conflicts", conflicts, tester.merge(b, o, t, bytes).containsConflicts());
+		assertEquals("test 29 - the byte merge should be the string merge", merged, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+		
+		// direct buffers are copied, heap buffers are used as they are
+		ByteBuffer direct = ByteBuffer.allocateDirect(o.length);
+		direct.put(o).flip();
+		ByteArrayOutputStream buffers = new ByteArrayOutputStream();
+		assertEquals("test 29 - the buffer merge should find the conflicts", conflicts, 
+			tester.merge(ByteBuffer.wrap(b), direct, ByteBuffer.wrap(t), Channels.newChannel(buffers)).containsConflicts());
+		assertEquals("test 29 - the buffer merge should be the string merge", merged, new String(buffers.toByteArray(), StandardCharsets.UTF_8));
+		assertEquals("test 29 - the buffer position should not move", 0, direct.position());
+		
+		File folder = tempFolder.newFolder();
+		File target = target(folder, "Merged.java", "a longer file that the merge truncates, a longer file that the merge truncates");
+		assertEquals("test 29 - the file merge should find the conflicts", conflicts, tester.merge(target(folder, "Base.java", base).toPath(), 
+			target(folder, "Ours.java", ours).toPath(), target(folder, "Theirs.java", theirs).toPath(), target.toPath()).containsConflicts());
+		assertEquals("test 29 - the file merge should be the string merge", merged, new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+	}
+	
+	/*
+	 * Scenario 30, the merge metrics are given a full merge, a fast path, a conflict, modified generated lines, 
+	 * an unchanged file, a read and a write. The counters, the latency buckets and the MXBean attributes read 
+	 * from an MBean server agree, and a second registration under the same name is reported without failing.
+	 */
+	
+	@Test
+	public void doMergeMetricsTest() throws Exception {
+		String[] template = { "class A {", "\tint x;", "\tint y;", "}" };
+		String[] added = { "class A {", "\tint x;", "\tint a;", "\tint y;", "}" };
+		String[] modified = { "class A {", "\tint x = 1;", "\tint y;", "}" };
+		String[] next = { "class A {", "\tint x;", "\tint y;", "\tint z;", "}" };
+		String[] conflicting = { "class A {", "\tint x;", "\tint b;", "\tint y;", "}" };
+		
+		MergeMetrics metrics = new MergeMetrics();
+		metrics.merged("full", MergingAndConflicts.DoMergingAndConflicts(edited(generated(template), added), generated(next)), 50_000);
+		metrics.merged("fast", MergingAndConflicts.DoMergingAndConflicts(generated(template), generated(next)), 2_000_000);
+		metrics.merged("conflict", MergingAndConflicts.DoMergingAndConflicts(edited(generated(template), added), generated(conflicting)), 2_000_000);
+		metrics.merged("modified", MergingAndConflicts.DoMergingAndConflicts(edited(generated(template), modified), generated(next)), 2_000_000_000L);
+		metrics.unchanged("unchanged");
+		metrics.phase("full", MergeListener.Phase.Read, 1_000, 100, 4);
+		metrics.phase("full", MergeListener.Phase.Write, 1_000, 200, 5);
+		
+		assertEquals("test 30 - four merges should be counted", 4, metrics.getMergeCount());
+		assertEquals("test 30 - two merges should succeed", 2, metrics.getFilesMerged());
+		assertEquals("test 30 - one full merge should be counted", 1, metrics.getFullMerges());
+		assertEquals("test 30 - one fast path should be counted", 1, metrics.getExistingUnchangedHits());
+		assertEquals("test 30 - half of the merges should take a fast path", 0.5, metrics.getFastPathHitRate(), 0);
+		assertEquals("test 30 - one conflict should be counted", 1, metrics.getFilesConflicted());
+		assertEquals("test 30 - one modified file should be counted", 1, metrics.getFilesOriginalModified());
+		assertEquals("test 30 - one unchanged file should be counted", 1, metrics.getFilesUnchanged());
+		assertEquals("test 30 - the bytes read should be counted", 100, metrics.getBytesRead());
+		assertEquals("test 30 - the bytes written should be counted", 200, metrics.getBytesWritten());
+		assertEquals("test 30 - one write should be counted", 1, metrics.getFilesWritten());
+		assertEquals("test 30 - the mean should be over all merges", (50 + 2_000 + 2_000 + 2_000_000) / 4.0, metrics.getMeanMergeMicros(), 1e-9);
+		long[] counts = new long[metrics.getMergeLatencyBoundsMicros().length];
+		counts[0] = 1; // 50 us
+		counts[4] = 2; // 2 ms
+		counts[counts.length - 1] = 1; // 2 s
+		assertArrayEquals("test 30 - the merges should be in their latency buckets", counts, metrics.getMergeLatencyCounts());
+		
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		assertEquals("test 30 - the metrics should be registered", true, metrics.registerMBean(server));
+		assertEquals("test 30 - a second registration should be reported", false, new MergeMetrics().registerMBean(server));
+		ObjectName name = new ObjectName(MergeMetrics.OBJECT_NAME);
+		MergeMetricsMXBean snapshot = JMX.newMXBeanProxy(server, name, MergeMetricsMXBean.class);
+		assertEquals("test 30 - the MXBean should show the merges", metrics.getMergeCount(), snapshot.getMergeCount());
+		assertEquals("test 30 - the MXBean should show the conflicts", metrics.getFilesConflicted(), snapshot.getFilesConflicted());
+		assertEquals("test 30 - the MXBean should show the hit rate", metrics.getFastPathHitRate(), snapshot.getFastPathHitRate(), 0);
+		assertArrayEquals("test 30 - the MXBean should show the latencies", counts, (long[]) server.getAttribute(name, "MergeLatencyCounts"));
+		
+		snapshot.reset();
+		assertEquals("test 30 - the MXBean should reset the merges", 0, metrics.getMergeCount());
+		assertArrayEquals("test 30 - the MXBean should reset the latencies", new long[counts.length], metrics.getMergeLatencyCounts());
+	}
+	
+	/*
+	 * Scenario 31, five merge phases of 1 to 5 us, given out of order, and three whole merges are sent to the 
+	 * statistics as a merge listener: the counts, bytes, lines and percentiles are the ones of those timings, 
+	 * the report has a row for each phase that ran, and a merge session sends one sample per phase it runs.
+	 */
+	
+	@Test
+	public void doMergeStatisticsTest() throws IOException {
+		MergeStatistics statistics = new MergeStatistics();
+		MergeListener listener = statistics;
+		for (long micros : new long[] { 5, 1, 4, 2, 3 })
+			listener.phase("A.java", MergeListener.Phase.Merge, micros * 1000, 10, 2);
+		listener.phase("A.java", MergeListener.Phase.Read, 7000, 100, -1);
+		for (long micros : new long[] { 30, 10, 20 })
+			listener.merged("A.java", null, micros * 1000);
+		
+		assertEquals("test 31 - every merge phase should be counted", 5, statistics.getCount(MergeListener.Phase.Merge));
+		assertEquals("test 31 - the bytes should be added up", 50, statistics.getBytes(MergeListener.Phase.Merge));
+		assertEquals("test 31 - the lines should be added up", 10, statistics.getLines(MergeListener.Phase.Merge));
+		assertEquals("test 31 - lines that are not counted should not be added", 0, statistics.getLines(MergeListener.Phase.Read));
+		assertEquals("test 31 - the median should be the middle timing", 3000, statistics.getPercentile(MergeListener.Phase.Merge, 50));
+		assertEquals("test 31 - p90 should be the slowest of five", 5000, statistics.getPercentile(MergeListener.Phase.Merge, 90));
+		assertEquals("test 31 - p0 should be the fastest", 1000, statistics.getPercentile(MergeListener.Phase.Merge, 0));
+		assertEquals("test 31 - a phase that did not run should have no timings", 0, statistics.getPercentile(MergeListener.Phase.Write, 50));
+		assertEquals("test 31 - every whole merge should be counted", 3, statistics.getFileCount());
+		assertEquals("test 31 - the median merge should be the middle one", 20000, statistics.getFilePercentile(50));
+		
+		String report = statistics.report();
+		assertEquals("test 31 - the report should have the merge phase", true, report.contains(String.format("Merge,5,3,5,5,5,50,10%n")));
+		assertEquals("test 31 - the report should have the read phase", true, report.contains(String.format("Read,1,7,7,7,7,100,0%n")));
+		assertEquals("test 31 - the report should have the whole merges", true, report.contains(String.format("Total,3,20,30,30,30,0,0%n")));
+		assertEquals("test 31 - the report should skip the phases that did not run", false, report.contains("Write,"));
+		
+		statistics.reset();
+		assertEquals("test 31 - the merge phases should be reset", 0, statistics.getCount(MergeListener.Phase.Merge));
+		assertEquals("test 31 - the whole merges should be reset", 0, statistics.getFileCount());
+		
+		String[] template = { "class A {", "\tint x;", "\tint y;", "}" };
+		String[] added = { "class A {", "\tint x;", "\tint a;", "\tint y;", "}" };
+		String[] next = { "class A {", "\tint x;", "\tint y;", "\tint z;", "}" };
+		MergeSession session = new MergeSession(edited(generated(template), added), generated(next));
+		session.setListener(statistics);
+		assertEquals("test 31 - the file should merge", StatusCode.MergedSuccessfully, session.merge().getStatus());
+		assertEquals("test 31 - the session should send one merge", 1, statistics.getCount(MergeListener.Phase.Merge));
+		assertEquals("test 31 - the session should parse both trailers", 2, statistics.getCount(MergeListener.Phase.TrailerParsing));
+		assertEquals("test 31 - the session should send the whole merge", 1, statistics.getFileCount());
+	}
+	
+	/*
+	 * Scenario 32, an output with the regions a, b and a again: the located regions are listed in the order 
+	 * of the file, each id finds its first region, and the repeated id is reported as a problem.
+	 */
+	
+	@Test
+	public void doOutputRegionsTest() {
+		String text = String.join("\n", "class A {", 
+			"// protected region a on begin", "int a;", "// protected region a end", 
+			"// protected region b off begin", "// protected region b end", 
+			"// protected region a on begin", "int c;", "// protected region a end", 
+			"}");
+		Output output = new CommentBlockPartitioner("//", "").partition(text);
+		List<LocatedRegion> located = output.getLocatedRegions();
+		
+		assertEquals("test 32 - every located region should be listed", 3, located.size());
+		assertEquals("test 32 - the regions should be in the order of the file", "a", located.get(0).getId());
+		assertEquals("test 32 - the regions should be in the order of the file", "b", located.get(1).getId());
+		assertEquals("test 32 - the regions should be in the order of the file", "a", located.get(2).getId());
+		assertEquals("test 32 - the located regions should be regions of the output", true, output.getRegions().containsAll(located));
+		assertEquals("test 32 - the disabled region should be kept", false, located.get(1).isEnabled());
+		
+		assertEquals("test 32 - the first region with the id should be found", true, output.getLocatedRegion("a") == located.get(0));
+		assertEquals("test 32 - the region should be found by its id", true, output.getLocatedRegion("b") == located.get(1));
+		assertEquals("test 32 - an unknown id should find no region", null, output.getLocatedRegion("c"));
+		assertEquals("test 32 - the repeated id should be reported", 
+			Arrays.asList("Output contains more than one region with the identifier 'a'"), output.getProblems());
+	}
+	
+	/*
+	 * Scenario 33, an indexed document finds its lines as split("\n", -1) does: a CRLF line keeps its "\r", 
+	 * a document without a final newline ends with its last line, one with a final newline ends with an empty 
+	 * line, and an empty document has one empty line. Lines out of range are not found.
+	 */
+	
+	@Test
+	public void doIndexedDocumentTest() {
+		String crlf = "class A {\r\n\tint x;\r\n}";
+		IndexedDocument doc = new IndexedDocument(crlf);
+		assertEquals("test 33 - the CRLF lines should be counted", 3, doc.getLineCount());
+		assertEquals("test 33 - a CRLF line should keep its CR", "class A {\r", doc.getLine(0));
+		assertEquals("test 33 - the line should start after the LF", crlf.indexOf('\t'), doc.getLineStart(1));
+		assertEquals("test 33 - the line should end before the LF", crlf.indexOf('\n'), doc.getLineEnd(0));
+		assertEquals("test 33 - the text should be the lines as they are", "\tint x;\r\n}", doc.getText(1, 3));
+		assertEquals("test 33 - the lines should be the lines of split", Arrays.asList(crlf.split("\n", -1)), doc.getLines());
+		
+		String unterminated = "class A {\n\tint x;\n}";
+		doc = new IndexedDocument(unterminated);
+		assertEquals("test 33 - the last line should be counted without a newline", 3, doc.getLineCount());
+		assertEquals("test 33 - the last line should end with the document", unterminated.length(), doc.getLineEnd(2));
+		assertEquals("test 33 - the last line should be read", "}", doc.getLine(2));
+		assertEquals("test 33 - the text should be the whole document", unterminated, doc.getText(0, 3));
+		doc = new IndexedDocument(unterminated + "\n");
+		assertEquals("test 33 - a final newline should end with an empty line", 4, doc.getLineCount());
+		assertEquals("test 33 - a final newline should end with an empty line", "", doc.getLine(3));
+		assertEquals("test 33 - the lines should be the lines of split", Arrays.asList((unterminated + "\n").split("\n", -1)), doc.getLines());
+		assertEquals("test 33 - a view of the lines should be the lines", Arrays.asList("\tint x;", "}"), doc.getLines().subList(1, 3));
+		
+		doc = new IndexedDocument("");
+		assertEquals("test 33 - an empty document should have one line", 1, doc.getLineCount());
+		assertEquals("test 33 - the line should be empty", "", doc.getLine(0));
+		assertEquals("test 33 - the line should start and end at 0", 0, doc.getLineEnd(0));
+		assertEquals("test 33 - no lines should have no text", "", doc.getText(0, 0));
+		assertEquals("test 33 - no lines should be an empty view", 0, doc.getLines(0, 0).size());
+		
+		boolean found = true;
+		try {
+			doc.getLine(1);
+		} catch (IndexOutOfBoundsException e) {
+			found = false;
+		}
+		assertEquals("test 33 - a line after the last should not be found", false, found);
+	}
+	
+	private static List<String> inserted(List<String> lines, int at, String line) {
+		List<String> copy = new ArrayList<>(lines);
+		copy.add(at, line);
+		return copy;
+	}
 }
\ No newline at end of file